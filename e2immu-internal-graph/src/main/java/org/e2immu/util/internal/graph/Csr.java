@@ -0,0 +1,310 @@
+package org.e2immu.util.internal.graph;
+
+import java.util.*;
+
+/*
+Compressed sparse row representation of the edges of a graph.
+Vertices are numbered densely, in the order of G.vertices(). The outgoing edges of vertex i
+are found at positions start(i) (inclusive) to end(i) (exclusive) in the targets and weights arrays,
+in the order in which they were added to the graph.
+
+This is the primitive fast path for algorithms: no boxing, no hashing, once the vertex ids are known.
+ */
+public final class Csr<T> {
+    private final VertexIndex<T> index;
+    private final int[] offsets;
+    private final int[] targets;
+    private final long[] weights;
+    private volatile Csr<T> transposed;
+
+    Csr(VertexIndex<T> index, int[] offsets, int[] targets, long[] weights) {
+        assert offsets.length == index.size() + 1;
+        assert targets.length == weights.length && targets.length == offsets[index.size()];
+        this.index = index;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+    }
+
+    /*
+    Edges whose source is not in the vertex index are ignored; targets must be vertices.
+     */
+    static <T> Csr<T> create(VertexIndex<T> index, Map<V<T>, Map<V<T>, Long>> edges) {
+        int n = index.size();
+        int[] offsets = new int[n + 1];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            Map<V<T>, Long> localEdges = edges.get(index.vertex(i));
+            if (localEdges != null) count += localEdges.size();
+        }
+        int[] targets = new int[count];
+        long[] weights = new long[count];
+        int e = 0;
+        for (int i = 0; i < n; i++) {
+            offsets[i] = e;
+            Map<V<T>, Long> localEdges = edges.get(index.vertex(i));
+            if (localEdges != null) {
+                for (Map.Entry<V<T>, Long> entry : localEdges.entrySet()) {
+                    int to = index.indexOf(entry.getKey());
+                    assert to >= 0 : "Target " + entry.getKey() + " is not a vertex";
+                    targets[e] = to;
+                    weights[e] = entry.getValue();
+                    e++;
+                }
+            }
+        }
+        offsets[n] = e;
+        return new Csr<>(index, offsets, targets, weights);
+    }
+
+    VertexIndex<T> vertexIndex() {
+        return index;
+    }
+
+    public int vertexCount() {
+        return index.size();
+    }
+
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    public V<T> vertex(int i) {
+        return index.vertex(i);
+    }
+
+    // -1 when v is not a vertex of this graph
+    public int indexOf(V<T> v) {
+        return index.indexOf(v);
+    }
+
+    public int start(int i) {
+        return offsets[i];
+    }
+
+    public int end(int i) {
+        return offsets[i + 1];
+    }
+
+    public int outDegree(int i) {
+        return offsets[i + 1] - offsets[i];
+    }
+
+    public int target(int e) {
+        return targets[e];
+    }
+
+    public long weight(int e) {
+        return weights[e];
+    }
+
+    /*
+    Same vertex indices, all edges reversed: row i holds the sources of the edges into vertex i,
+    in increasing index order. Computed once, in O(V+E).
+     */
+    public Csr<T> transposed() {
+        Csr<T> t = transposed;
+        if (t == null) {
+            int n = index.size();
+            int[] tOffsets = new int[n + 1];
+            for (int target : targets) tOffsets[target + 1]++;
+            for (int i = 0; i < n; i++) tOffsets[i + 1] += tOffsets[i];
+            int[] next = Arrays.copyOf(tOffsets, n);
+            int[] tTargets = new int[targets.length];
+            long[] tWeights = new long[targets.length];
+            for (int i = 0; i < n; i++) {
+                for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+                    int pos = next[targets[e]]++;
+                    tTargets[pos] = i;
+                    tWeights[pos] = weights[e];
+                }
+            }
+            t = new Csr<>(index, tOffsets, tTargets, tWeights);
+            t.transposed = this;
+            transposed = t;
+        }
+        return t;
+    }
+
+    /*
+    Same vertex indices, without the edges from each key to the vertices in its value.
+    Unaffected rows are copied as blocks; no hashing is needed apart from the lookup of the removed edges.
+     */
+    Csr<T> withoutEdges(Map<V<T>, ? extends Collection<V<T>>> edgesToRemove) {
+        int n = index.size();
+        boolean[] remove = new boolean[targets.length];
+        int removed = 0;
+        for (Map.Entry<V<T>, ? extends Collection<V<T>>> entry : edgesToRemove.entrySet()) {
+            int from = index.indexOf(entry.getKey());
+            if (from < 0) continue;
+            for (int e = offsets[from]; e < offsets[from + 1]; e++) {
+                if (entry.getValue().contains(index.vertex(targets[e]))) {
+                    remove[e] = true;
+                    removed++;
+                }
+            }
+        }
+        if (removed == 0) return this;
+        int[] newOffsets = new int[n + 1];
+        int[] newTargets = new int[targets.length - removed];
+        long[] newWeights = new long[targets.length - removed];
+        int pos = 0;
+        int blockStart = 0;
+        for (int e = 0; e <= targets.length; e++) {
+            if (e == targets.length || remove[e]) {
+                int length = e - blockStart;
+                System.arraycopy(targets, blockStart, newTargets, pos, length);
+                System.arraycopy(weights, blockStart, newWeights, pos, length);
+                pos += length;
+                blockStart = e + 1;
+            }
+        }
+        // offsets shift by the number of removed edges before the start of each row
+        int shift = 0;
+        int e = 0;
+        for (int i = 0; i <= n; i++) {
+            int rowStart = offsets[i];
+            while (e < rowStart) {
+                if (remove[e++]) shift++;
+            }
+            newOffsets[i] = rowStart - shift;
+        }
+        return new Csr<>(index, newOffsets, newTargets, newWeights);
+    }
+
+    Map<V<T>, Map<V<T>, Long>> edgeMap() {
+        return new EdgeMap();
+    }
+
+    /*
+    Read-only view of the CSR arrays with the same contract as the edge maps of G:
+    only vertices with at least one outgoing edge are present as keys.
+     */
+    private class EdgeMap extends AbstractMap<V<T>, Map<V<T>, Long>> {
+        private int size = -1;
+
+        @Override
+        public Map<V<T>, Long> get(Object key) {
+            int i = index.indexOf(key);
+            return i < 0 || outDegree(i) == 0 ? null : new Row(i);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            int i = index.indexOf(key);
+            return i >= 0 && outDegree(i) > 0;
+        }
+
+        @Override
+        public int size() {
+            if (size < 0) {
+                int s = 0;
+                for (int i = 0; i < index.size(); i++) if (outDegree(i) > 0) s++;
+                size = s;
+            }
+            return size;
+        }
+
+        @Override
+        public Set<Entry<V<T>, Map<V<T>, Long>>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<V<T>, Map<V<T>, Long>>> iterator() {
+                    return new Iterator<>() {
+                        private int i = skipEmpty(0);
+
+                        @Override
+                        public boolean hasNext() {
+                            return i < index.size();
+                        }
+
+                        @Override
+                        public Entry<V<T>, Map<V<T>, Long>> next() {
+                            if (i >= index.size()) throw new NoSuchElementException();
+                            Entry<V<T>, Map<V<T>, Long>> entry = new SimpleImmutableEntry<>(index.vertex(i), new Row(i));
+                            i = skipEmpty(i + 1);
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return EdgeMap.this.size();
+                }
+            };
+        }
+
+        private int skipEmpty(int i) {
+            while (i < index.size() && outDegree(i) == 0) i++;
+            return i;
+        }
+    }
+
+    /*
+    The outgoing edges of a single vertex. Lookups are linear in the out-degree.
+     */
+    private class Row extends AbstractMap<V<T>, Long> {
+        private final int from;
+
+        Row(int from) {
+            this.from = from;
+        }
+
+        private int find(Object key) {
+            int to = index.indexOf(key);
+            if (to >= 0) {
+                for (int e = offsets[from]; e < offsets[from + 1]; e++) {
+                    if (targets[e] == to) return e;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public Long get(Object key) {
+            int e = find(key);
+            return e < 0 ? null : weights[e];
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return find(key) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return outDegree(from);
+        }
+
+        @Override
+        public Set<Entry<V<T>, Long>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<V<T>, Long>> iterator() {
+                    return new Iterator<>() {
+                        private int e = offsets[from];
+
+                        @Override
+                        public boolean hasNext() {
+                            return e < offsets[from + 1];
+                        }
+
+                        @Override
+                        public Entry<V<T>, Long> next() {
+                            if (e >= offsets[from + 1]) throw new NoSuchElementException();
+                            Entry<V<T>, Long> entry = new SimpleImmutableEntry<>(index.vertex(targets[e]), weights[e]);
+                            e++;
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return outDegree(from);
+                }
+            };
+        }
+    }
+}
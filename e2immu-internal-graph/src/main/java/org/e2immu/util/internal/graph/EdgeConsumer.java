@@ -0,0 +1,6 @@
+package org.e2immu.util.internal.graph;
+
+@FunctionalInterface
+public interface EdgeConsumer<T> {
+    void accept(V<T> from, V<T> to, long weight);
+}
@@ -0,0 +1,106 @@
+package org.e2immu.util.internal.graph;
+
+import java.util.*;
+
+/*
+Edge map of a graph which differs from its base graph only in the outgoing edges of a few vertices.
+Only those rows are stored; all other lookups go to the base map, which is never copied.
+An empty replacement row means that all outgoing edges of that vertex have been removed.
+
+Overlays on overlays are flattened, so that lookups never pass through more than one overlay.
+ */
+final class EdgeOverlay<T> extends AbstractMap<V<T>, Map<V<T>, Long>> {
+    private final Map<V<T>, Map<V<T>, Long>> base;
+    private final Map<V<T>, Map<V<T>, Long>> replaced;
+    private final int size;
+    private final int depth;
+
+    private EdgeOverlay(Map<V<T>, Map<V<T>, Long>> base, Map<V<T>, Map<V<T>, Long>> replaced) {
+        this.base = base;
+        this.replaced = replaced;
+        this.depth = 1 + G.viewDepth(base);
+        int s = base.size();
+        for (Map<V<T>, Long> row : replaced.values()) {
+            if (row.isEmpty()) s--;
+        }
+        this.size = s;
+    }
+
+    /*
+    all keys of 'replaced' must be keys of 'base'.
+     */
+    static <T> Map<V<T>, Map<V<T>, Long>> of(Map<V<T>, Map<V<T>, Long>> base,
+                                            Map<V<T>, Map<V<T>, Long>> replaced) {
+        if (replaced.isEmpty()) return base;
+        if (base instanceof EdgeOverlay<T> overlay) {
+            Map<V<T>, Map<V<T>, Long>> merged = new HashMap<>(overlay.replaced);
+            merged.putAll(replaced);
+            return new EdgeOverlay<>(overlay.base, merged);
+        }
+        return new EdgeOverlay<>(base, replaced);
+    }
+
+    int depth() {
+        return depth;
+    }
+
+    @Override
+    public Map<V<T>, Long> get(Object key) {
+        Map<V<T>, Long> row = replaced.get(key);
+        if (row != null) return row.isEmpty() ? null : row;
+        return base.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        Map<V<T>, Long> row = replaced.get(key);
+        if (row != null) return !row.isEmpty();
+        return base.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<V<T>, Map<V<T>, Long>>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<V<T>, Map<V<T>, Long>>> iterator() {
+                Iterator<Entry<V<T>, Map<V<T>, Long>>> iterator = base.entrySet().iterator();
+                return new Iterator<>() {
+                    private Entry<V<T>, Map<V<T>, Long>> next = advance();
+
+                    private Entry<V<T>, Map<V<T>, Long>> advance() {
+                        while (iterator.hasNext()) {
+                            Entry<V<T>, Map<V<T>, Long>> entry = iterator.next();
+                            Map<V<T>, Long> row = replaced.get(entry.getKey());
+                            if (row == null) return entry;
+                            if (!row.isEmpty()) return new SimpleImmutableEntry<>(entry.getKey(), row);
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next != null;
+                    }
+
+                    @Override
+                    public Entry<V<T>, Map<V<T>, Long>> next() {
+                        if (next == null) throw new NoSuchElementException();
+                        Entry<V<T>, Map<V<T>, Long>> result = next;
+                        next = advance();
+                        return result;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+}
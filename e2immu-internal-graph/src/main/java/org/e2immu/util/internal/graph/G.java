@@ -1,30 +1,125 @@
 package org.e2immu.util.internal.graph;
 
+import org.e2immu.util.internal.graph.util.LazySort;
+
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.function.LongBinaryOperator;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /*
 This class uses linked maps and sets (as opposed to Map.copyOf, Set.copyOf, new HashMap(), etc.)
 to behave in a consistent way across tests.
+
+The edges are either stored in linked maps, or, after compact(), in an immutable CSR structure (see Csr)
+which is presented as a read-only map through the same API.
  */
 public class G<T> {
+    private static final int MAX_VIEW_DEPTH = 4;
+
     private final Map<T, V<T>> vertices;
     private final Map<V<T>, Map<V<T>, Long>> edges;
+    private final boolean compact;
+    private volatile Csr<T> csr;
+    // when not null, may compute 'csr' from the one of the graph this one was derived from (returns null if it cannot)
+    private final Supplier<Csr<T>> csrFromParent;
+    // dense numbering of the vertices, see indexOf(). Lazily computed, shared by graphs with the same vertices.
+    private volatile VertexIndex<T> vertexIndex;
+    // incoming edges: same contract as 'edges', but with the direction reversed. Lazily computed.
+    private volatile Map<V<T>, Map<V<T>, Long>> incoming;
+    // when not null, computes 'incoming' from the index of the graph this one was derived from
+    private final Supplier<Map<V<T>, Map<V<T>, Long>>> incomingFromParent;
+    // structural hash, see fingerprint(). Lazily computed.
+    private volatile Long fingerprint;
+    // when not null, computes the fingerprint of this graph from the one of the graph it was derived from
+    private final ToLongFunction<G<T>> fingerprintFromParent;
 
     private G(Map<T, V<T>> vertices,
               Map<V<T>, Map<V<T>, Long>> edges) {
+        this(vertices, edges, null, null, null);
+    }
+
+    private G(Map<T, V<T>> vertices,
+              Map<V<T>, Map<V<T>, Long>> edges,
+              Supplier<Csr<T>> csrFromParent,
+              Supplier<Map<V<T>, Map<V<T>, Long>>> incomingFromParent,
+              ToLongFunction<G<T>> fingerprintFromParent) {
         this.vertices = vertices;
         this.edges = edges;
+        this.compact = false;
+        this.csrFromParent = csrFromParent;
+        this.incomingFromParent = incomingFromParent;
+        this.fingerprintFromParent = fingerprintFromParent;
+    }
+
+    private G(Map<T, V<T>> vertices, Csr<T> csr) {
+        this.vertices = vertices;
+        this.csr = csr;
+        this.vertexIndex = csr.vertexIndex();
+        this.edges = csr.edgeMap();
+        this.compact = true;
+        this.csrFromParent = null;
+        this.incomingFromParent = null;
+        this.fingerprintFromParent = null;
     }
 
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        return o instanceof G<?> g && vertices.equals(g.vertices) && edges.equals(g.edges);
+        return o instanceof G<?> g && fingerprint() == g.fingerprint()
+               && vertices.equals(g.vertices) && edges.equals(g.edges);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(fingerprint());
+    }
+
+    /*
+    Hash of the vertices and the weighted edges of this graph, independent of their order.
+    Equal graphs have equal fingerprints. As it is a sum of a hash per vertex and a hash per edge,
+    the fingerprint of a graph derived by removing edges or vertices is computed by subtracting their contributions.
+     */
+    public long fingerprint() {
+        Long f = fingerprint;
+        if (f == null) {
+            f = fingerprintFromParent != null ? fingerprintFromParent.applyAsLong(this) : computeFingerprint();
+            fingerprint = f;
+        }
+        return f;
+    }
+
+    private long computeFingerprint() {
+        long sum = 0;
+        for (V<T> v : vertices.values()) {
+            sum += vertexHash(v);
+        }
+        long[] edgeSum = new long[1];
+        forEachEdge((from, to, weight) -> edgeSum[0] += edgeHash(from, to, weight));
+        return sum + edgeSum[0];
+    }
+
+    private static long vertexHash(V<?> v) {
+        return mix(v.hashCode() ^ 0x9E3779B97F4A7C15L);
+    }
+
+    private static long edgeHash(V<?> from, V<?> to, long weight) {
+        return mix(mix(((long) from.hashCode() << 32) ^ (to.hashCode() & 0xFFFFFFFFL)) + weight);
+    }
+
+    // finalizer of MurmurHash3
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
     }
 
     public static <T> G<T> create(Map<T, Map<T, Long>> initialGraph) {
@@ -38,27 +133,169 @@ public class G<T> {
             V<T> from = vertices.get(entry.getKey());
             for (Map.Entry<T, Long> e2 : entry.getValue().entrySet()) {
                 V<T> to = vertices.get(e2.getKey());
-                assert to != null;
+                if (to == null) throw unknownTarget(entry.getKey(), e2.getKey());
                 edges.computeIfAbsent(from, f -> new LinkedHashMap<>()).put(to, e2.getValue());
             }
         }
         return new G<>(vertices, edges);
     }
 
+    private static IllegalArgumentException unknownTarget(Object from, Object to) {
+        return new IllegalArgumentException("Edge " + from + " -> " + to + ": " + to + " is not a vertex");
+    }
+
+    public static <T> G<T> createCompact(Map<T, Map<T, Long>> initialGraph) {
+        Map<T, V<T>> vertices = new LinkedHashMap<>();
+        Map<T, Integer> ids = new HashMap<>();
+        V<T>[] array = VertexIndex.newArray(initialGraph.size());
+        int count = 0;
+        for (Map.Entry<T, Map<T, Long>> entry : initialGraph.entrySet()) {
+            V<T> v = new V<>(entry.getKey());
+            array[vertices.size()] = v;
+            ids.put(entry.getKey(), vertices.size());
+            vertices.put(entry.getKey(), v);
+            count += entry.getValue().size();
+        }
+        int[] offsets = new int[array.length + 1];
+        int[] targets = new int[count];
+        long[] weights = new long[count];
+        int i = 0;
+        int e = 0;
+        for (Map.Entry<T, Map<T, Long>> entry : initialGraph.entrySet()) {
+            offsets[i++] = e;
+            for (Map.Entry<T, Long> e2 : entry.getValue().entrySet()) {
+                Integer to = ids.get(e2.getKey());
+                if (to == null) throw unknownTarget(entry.getKey(), e2.getKey());
+                targets[e] = to;
+                weights[e++] = e2.getValue();
+            }
+        }
+        offsets[i] = e;
+        return new G<>(vertices, new Csr<>(new VertexIndex<>(array), offsets, targets, weights));
+    }
+
+    /*
+    Compact graph directly from CSR arrays: the edges of the i-th vertex are at positions offsets[i] to
+    offsets[i+1] in targets (vertex indices) and weights. The arrays are not copied.
+     */
+    public static <T> G<T> createCompact(List<T> vertexList, int[] offsets, int[] targets, long[] weights) {
+        if (offsets.length != vertexList.size() + 1 || targets.length != weights.length
+            || offsets[vertexList.size()] != targets.length) {
+            throw new IllegalArgumentException("Inconsistent CSR arrays");
+        }
+        Map<T, V<T>> vertices = new LinkedHashMap<>();
+        V<T>[] array = VertexIndex.newArray(vertexList.size());
+        for (T t : vertexList) {
+            V<T> v = new V<>(t);
+            array[vertices.size()] = v;
+            vertices.put(t, v);
+        }
+        return new G<>(vertices, new Csr<>(new VertexIndex<>(array), offsets, targets, weights));
+    }
+
+    /*
+    Same graph, same vertex objects, with the edges stored in CSR form.
+     */
+    public G<T> compact() {
+        if (compact) return this;
+        G<T> g = new G<>(vertices, csr());
+        g.fingerprint = fingerprint;
+        return g;
+    }
+
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /*
+    Primitive view on this graph; computed once, and shared by all callers.
+     */
+    public Csr<T> csr() {
+        Csr<T> c = csr;
+        if (c == null) {
+            c = csrFromParent == null ? null : csrFromParent.get();
+            if (c == null) c = Csr.create(vertexIndex(), edges);
+            csr = c;
+        }
+        return c;
+    }
+
+    private VertexIndex<T> vertexIndex() {
+        VertexIndex<T> vi = vertexIndex;
+        if (vi == null) {
+            vi = new VertexIndex<>(vertices.values());
+            vertexIndex = vi;
+        }
+        return vi;
+    }
+
+    /*
+    Dense index of v in this graph, between 0 and vertexCount() (exclusive), in the order of vertices();
+    -1 when v is not a vertex of this graph. These are the indices used by csr().
+    Graphs derived by removing edges share the numbering of the graph they were derived from;
+    subgraphs have their own.
+     */
+    public int indexOf(V<T> v) {
+        return vertexIndex().indexOf(v);
+    }
+
+    public V<T> vertexAt(int index) {
+        return vertexIndex().vertex(index);
+    }
+
+    public int vertexCount() {
+        return vertices.size();
+    }
+
     public G<T> reverse(Predicate<T> predicate) {
+        Map<V<T>, Map<V<T>, Long>> newEdges = new LinkedHashMap<>();
+        for (Map.Entry<V<T>, Map<V<T>, Long>> entry : incomingIndex().entrySet()) {
+            if (predicate.test(entry.getKey().t())) {
+                newEdges.put(entry.getKey(), entry.getValue());
+            }
+        }
+        G<T> g = new G<T>(vertices, newEdges);
+        g.vertexIndex = vertexIndex;
+        return g;
+    }
+
+    /*
+    The incoming edges of v, as a map from source vertex to weight; null when there are none.
+    The index is computed once per graph, on first use.
+     */
+    public Map<V<T>, Long> incomingEdges(V<T> v) {
+        assert v != null;
+        return incomingIndex().get(v);
+    }
+
+    public int inDegree(V<T> v) {
+        Map<V<T>, Long> map = incomingIndex().get(v);
+        return map == null ? 0 : map.size();
+    }
+
+    public int outDegree(V<T> v) {
+        Map<V<T>, Long> map = edges.get(v);
+        return map == null ? 0 : map.size();
+    }
+
+    private Map<V<T>, Map<V<T>, Long>> incomingIndex() {
+        Map<V<T>, Map<V<T>, Long>> in = incoming;
+        if (in == null) {
+            in = incomingFromParent != null ? incomingFromParent.get() : computeIncoming();
+            incoming = in;
+        }
+        return in;
+    }
+
+    private Map<V<T>, Map<V<T>, Long>> computeIncoming() {
         Map<V<T>, Map<V<T>, Long>> newEdges = new LinkedHashMap<>();
         for (Map.Entry<V<T>, Map<V<T>, Long>> e : edges.entrySet()) {
-            Map<V<T>, Long> localEdges = e.getValue();
-            for (Map.Entry<V<T>, Long> entry : localEdges.entrySet()) {
-                V<T> to = entry.getKey();
-                if (predicate.test(to.t())) {
-                    Map<V<T>, Long> newLocal = newEdges.computeIfAbsent(to, t -> new LinkedHashMap<>());
-                    newLocal.put(e.getKey(), entry.getValue());
-                }
+            for (Map.Entry<V<T>, Long> entry : e.getValue().entrySet()) {
+                newEdges.computeIfAbsent(entry.getKey(), t -> new LinkedHashMap<>()).put(e.getKey(), entry.getValue());
             }
         }
-        newEdges.replaceAll((k, v) -> Map.copyOf(v));
-        return new G<T>(vertices, Map.copyOf(newEdges));
+        newEdges.replaceAll((k, v) -> Collections.unmodifiableMap(v));
+        return newEdges;
     }
 
     public V<T> vertex(T t) {
@@ -104,6 +341,10 @@ public class G<T> {
             return create(map);
         }
 
+        public G<T> buildCompact() {
+            return createCompact(map);
+        }
+
         public Iterable<Map.Entry<T, Map<T, Long>>> edges() {
             return () -> map.entrySet().iterator();
         }
@@ -117,6 +358,85 @@ public class G<T> {
         }
     }
 
+    /*
+    Thread-safe variant of Builder: many threads can add vertices and edges at the same time.
+    Each vertex has its own concurrent edge map, so threads only contend when they add edges from the same vertex.
+
+    Because the order in which threads add elements is not reproducible, build() orders vertices and edges
+    using the comparator. The resulting graph does not depend on the interleaving of the threads, as long as
+    the sum operator is commutative and associative.
+     */
+    public static class ConcurrentBuilder<T> {
+        private final LongBinaryOperator sum;
+        private final Comparator<? super T> comparator;
+        private final ConcurrentHashMap<T, ConcurrentHashMap<T, Long>> map = new ConcurrentHashMap<>();
+
+        public ConcurrentBuilder(LongBinaryOperator sum, Comparator<? super T> comparator) {
+            this.sum = sum;
+            this.comparator = comparator;
+        }
+
+        public void addAll(Builder<T> other) {
+            other.map.forEach((from, m) -> {
+                Map<T, Long> m2 = ensureVertex(from);
+                m.forEach((to, value) -> {
+                    ensureVertex(to);
+                    m2.merge(to, value, Long::sum);
+                });
+            });
+        }
+
+        public void addVertex(T t) {
+            ensureVertex(t);
+        }
+
+        private Map<T, Long> ensureVertex(T t) {
+            assert t != null;
+            return map.computeIfAbsent(t, f -> new ConcurrentHashMap<>());
+        }
+
+        public void mergeEdge(T from, T to, long weight) {
+            ensureVertex(to);
+            ensureVertex(from).merge(to, weight, sum::applyAsLong);
+        }
+
+        public void add(T from, Iterable<? extends T> tos) {
+            Map<T, Long> m = ensureVertex(from);
+            tos.forEach(to -> {
+                ensureVertex(to);
+                m.merge(Objects.requireNonNull(to), 1L, Long::sum);
+            });
+        }
+
+        /*
+        Must not be called while other threads are still adding.
+         */
+        public G<T> build() {
+            return create(sortedMap());
+        }
+
+        public G<T> buildCompact() {
+            return createCompact(sortedMap());
+        }
+
+        private Map<T, Map<T, Long>> sortedMap() {
+            List<T> sortedVertices = new ArrayList<>(map.keySet());
+            sortedVertices.sort(comparator);
+            Map<T, Map<T, Long>> result = new LinkedHashMap<>();
+            for (T from : sortedVertices) {
+                ConcurrentHashMap<T, Long> edges = map.get(from);
+                List<T> sortedTargets = new ArrayList<>(edges.keySet());
+                sortedTargets.sort(comparator);
+                Map<T, Long> row = new LinkedHashMap<>();
+                for (T to : sortedTargets) {
+                    row.put(to, edges.get(to));
+                }
+                result.put(from, row);
+            }
+            return result;
+        }
+    }
+
     @Override
     public String toString() {
         return toString(", ");
@@ -127,82 +447,171 @@ public class G<T> {
     }
 
     public String toString(String delimiter, Function<Long, String> edgeValuePrinter) {
-        return edges.entrySet().stream()
-                .flatMap(e -> e.getValue().entrySet().stream()
-                        .map(e2 -> new E<>(e.getKey(), e2.getKey(), e2.getValue())))
-                .map(e -> e.toString(edgeValuePrinter)).sorted().collect(Collectors.joining(delimiter));
+        List<String> list = new ArrayList<>();
+        forEachEdge((from, to, weight) -> list.add(from + "->" + edgeValuePrinter.apply(weight) + "->" + to));
+        return list.stream().sorted().collect(Collectors.joining(delimiter));
     }
 
     public G<T> withFewerEdges(Map<V<T>, Set<V<T>>> edgesToRemove) {
-        return internalWithFewerEdges(edgesToRemove::get);
+        return internalWithFewerEdges(edgesToRemove.keySet(), edgesToRemove::get);
     }
 
     public G<T> withFewerEdgesMap(Map<V<T>, Map<V<T>, Long>> edgesToRemove) {
-        return internalWithFewerEdges(v -> edgesToRemove.getOrDefault(v, Map.of()).keySet());
+        return internalWithFewerEdges(edgesToRemove.keySet(), v -> edgesToRemove.getOrDefault(v, Map.of()).keySet());
     }
 
-    private G<T> internalWithFewerEdges(Function<V<T>, Set<V<T>>> edgesToRemove) {
-        Map<V<T>, Map<V<T>, Long>> newEdges = new LinkedHashMap<>();
-        for (Map.Entry<V<T>, Map<V<T>, Long>> entry : edges.entrySet()) {
-            Set<V<T>> toRemove = edgesToRemove.apply(entry.getKey());
-            Map<V<T>, Long> newEdgesOfV;
-            if (toRemove != null && !toRemove.isEmpty()) {
-                Map<V<T>, Long> map = new LinkedHashMap<>(entry.getValue());
-                map.keySet().removeAll(toRemove);
-                newEdgesOfV = map;
-            } else {
-                newEdgesOfV = entry.getValue();
+    /*
+    The new graph is an overlay on this one: only the rows of the vertices that lose edges are copied,
+    so that the cost is proportional to the edges being removed rather than to the size of the graph.
+     */
+    private G<T> internalWithFewerEdges(Set<V<T>> sources, Function<V<T>, Set<V<T>>> edgesToRemove) {
+        Map<V<T>, Map<V<T>, Long>> replaced = new HashMap<>();
+        Map<V<T>, Set<V<T>>> removed = new HashMap<>();
+        long removedHash = 0;
+        for (V<T> from : sources) {
+            Map<V<T>, Long> current = edges.get(from);
+            Set<V<T>> toRemove = edgesToRemove.apply(from);
+            if (current != null && toRemove != null && !toRemove.isEmpty()) {
+                Map<V<T>, Long> map = new LinkedHashMap<>(current);
+                for (V<T> to : toRemove) {
+                    Long weight = map.remove(to);
+                    if (weight != null) removedHash += edgeHash(from, to, weight);
+                }
+                if (map.size() < current.size()) {
+                    replaced.put(from, map);
+                    removed.put(from, toRemove);
+                }
             }
-            if (newEdgesOfV.isEmpty()) {
-                newEdges.remove(entry.getKey());
-            } else {
-                newEdges.put(entry.getKey(), newEdgesOfV);
+        }
+        if (replaced.isEmpty()) return this;
+        // the CSR arrays and the incoming index of the new graph are derived from ours, with the same edges removed
+        long delta = removedHash;
+        G<T> g = new G<T>(vertices, EdgeOverlay.of(edges, replaced), () -> {
+            Csr<T> c = csr;
+            return c == null ? null : c.withoutEdges(removed);
+        }, () -> incomingWithout(removed), g2 -> fingerprint() - delta);
+        g.vertexIndex = vertexIndex();
+        return g;
+    }
+
+    private Map<V<T>, Map<V<T>, Long>> incomingWithout(Map<V<T>, Set<V<T>>> removed) {
+        Map<V<T>, Map<V<T>, Long>> in = incomingIndex();
+        Map<V<T>, Map<V<T>, Long>> replaced = new HashMap<>();
+        for (Map.Entry<V<T>, Set<V<T>>> entry : removed.entrySet()) {
+            for (V<T> to : entry.getValue()) {
+                Map<V<T>, Long> current = in.get(to);
+                if (current != null && current.containsKey(entry.getKey())) {
+                    replaced.computeIfAbsent(to, t -> new LinkedHashMap<>(current)).remove(entry.getKey());
+                }
             }
         }
-        return new G<T>(vertices, newEdges);
+        replaced.replaceAll((k, v) -> Collections.unmodifiableMap(v));
+        return EdgeOverlay.of(in, replaced);
     }
 
     public G<T> subGraph(Set<V<T>> subSet) {
         return subGraph(subSet, null);
     }
 
+    /*
+    The subgraph is a view: its edges are filtered on the fly from the edges of this graph, which are not copied.
+    When views have been stacked too deeply, the new subgraph is materialized instead.
+     */
     public G<T> subGraph(Set<V<T>> subSet, Predicate<Long> acceptEdgePredicate) {
         Map<T, V<T>> subMap = new LinkedHashMap<>();
-        Map<V<T>, Map<V<T>, Long>> newEdges = new LinkedHashMap<>();
         for (V<T> v : subSet) {
-            Map<V<T>, Long> localEdges = edges.get(v);
-            if (localEdges != null) {
-                Map<V<T>, Long> newLocal = new LinkedHashMap<>();
-                for (Map.Entry<V<T>, Long> entry : localEdges.entrySet()) {
-                    V<T> to = entry.getKey();
-                    if ((acceptEdgePredicate == null || acceptEdgePredicate.test(entry.getValue())) && subSet.contains(to)) {
-                        newLocal.put(to, entry.getValue());
+            subMap.put(v.t(), v);
+        }
+        SubGraphEdges<T> view = SubGraphEdges.of(edges, subMap, acceptEdgePredicate);
+        ToLongFunction<G<T>> fingerprintFromParent = acceptEdgePredicate == null && 2 * subMap.size() >= vertices.size()
+                ? g -> subGraphFingerprint(g) : null;
+        if (view.depth() > MAX_VIEW_DEPTH) {
+            return new G<>(subMap, copy(view), null, null, fingerprintFromParent);
+        }
+        return new G<>(subMap, view, null, null, fingerprintFromParent);
+    }
+
+    /*
+    Subtract the vertices that are not in the subgraph, and all edges that start or end in them.
+    This is cheaper than a computation from scratch when only a minority of the vertices is removed.
+     */
+    private long subGraphFingerprint(G<T> sub) {
+        for (V<T> v : sub.vertices.values()) {
+            if (!vertices.containsKey(v.t())) return sub.computeFingerprint();
+        }
+        long f = fingerprint();
+        Map<V<T>, Map<V<T>, Long>> in = incomingIndex();
+        for (V<T> v : vertices.values()) {
+            if (!sub.vertices.containsKey(v.t())) {
+                f -= vertexHash(v);
+                Map<V<T>, Long> out = edges.get(v);
+                if (out != null) {
+                    for (Map.Entry<V<T>, Long> entry : out.entrySet()) {
+                        f -= edgeHash(v, entry.getKey(), entry.getValue());
                     }
                 }
-                if (!newLocal.isEmpty()) {
-                    newEdges.put(v, newLocal);
+                Map<V<T>, Long> incomingOfV = in.get(v);
+                if (incomingOfV != null) {
+                    for (Map.Entry<V<T>, Long> entry : incomingOfV.entrySet()) {
+                        // edges between two removed vertices have been subtracted as outgoing edges
+                        if (sub.vertices.containsKey(entry.getKey().t())) {
+                            f -= edgeHash(entry.getKey(), v, entry.getValue());
+                        }
+                    }
                 }
             }
-            subMap.put(v.t(), v);
         }
-        return new G<>(subMap, newEdges);
+        return f;
+    }
+
+    /*
+    Same graph, with the edges copied into linked maps, independently of the graph this one was derived from.
+     */
+    public G<T> materialize() {
+        if (compact || viewDepth(edges) == 0) return this;
+        G<T> g = new G<>(vertices, copy(edges));
+        g.fingerprint = fingerprint;
+        g.vertexIndex = vertexIndex;
+        return g;
+    }
+
+    private static <T> Map<V<T>, Map<V<T>, Long>> copy(Map<V<T>, Map<V<T>, Long>> edges) {
+        Map<V<T>, Map<V<T>, Long>> newEdges = new LinkedHashMap<>();
+        for (Map.Entry<V<T>, Map<V<T>, Long>> entry : edges.entrySet()) {
+            newEdges.put(entry.getKey(), new LinkedHashMap<>(entry.getValue()));
+        }
+        return newEdges;
+    }
+
+    // the number of overlays and subgraph views between this edge map and stored edges
+    static int viewDepth(Map<?, ?> edges) {
+        if (edges instanceof EdgeOverlay<?> overlay) return overlay.depth();
+        if (edges instanceof SubGraphEdges<?> sub) return sub.depth();
+        return 0;
     }
 
+    /*
+    The vertices of subSet, with the edges between them reversed. Uses the incoming edge index.
+     */
     public G<T> mutableReverseSubGraph(Set<V<T>> subSet) {
+        Map<V<T>, Map<V<T>, Long>> in = incomingIndex();
         Map<T, V<T>> subMap = new LinkedHashMap<>();
         Map<V<T>, Map<V<T>, Long>> newEdges = new LinkedHashMap<>();
         for (V<T> v : subSet) {
-            Map<V<T>, Long> localEdges = edges.get(v);
+            Map<V<T>, Long> localEdges = in.get(v);
             if (localEdges != null) {
+                Map<V<T>, Long> newLocal = new LinkedHashMap<>();
                 for (Map.Entry<V<T>, Long> entry : localEdges.entrySet()) {
-                    V<T> to = entry.getKey();
-                    Map<V<T>, Long> newLocal = newEdges.computeIfAbsent(to, t -> new LinkedHashMap<>());
-                    newLocal.put(v, entry.getValue());
+                    if (subSet.contains(entry.getKey())) {
+                        newLocal.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                if (!newLocal.isEmpty()) {
+                    newEdges.put(v, newLocal);
                 }
             }
             subMap.put(v.t(), v);
         }
-        // freeze edge maps
         return new G<T>(subMap, newEdges);
     }
 
@@ -219,27 +628,94 @@ public class G<T> {
         return () -> edges.entrySet().iterator();
     }
 
+    /*
+    Visits all edges, without allocating an object per edge.
+     */
+    public void forEachEdge(EdgeConsumer<T> consumer) {
+        if (compact) {
+            Csr<T> c = csr;
+            for (int i = 0; i < c.vertexCount(); i++) {
+                V<T> from = c.vertex(i);
+                for (int e = c.start(i); e < c.end(i); e++) {
+                    consumer.accept(from, c.vertex(c.target(e)), c.weight(e));
+                }
+            }
+        } else {
+            for (Map.Entry<V<T>, Map<V<T>, Long>> entry : edges.entrySet()) {
+                V<T> from = entry.getKey();
+                for (Map.Entry<V<T>, Long> e2 : entry.getValue().entrySet()) {
+                    consumer.accept(from, e2.getKey(), e2.getValue());
+                }
+            }
+        }
+    }
+
+    /*
+    Visits all edges, in terms of the vertex indices of csr().
+     */
+    public void forEachIntEdge(IntEdgeConsumer consumer) {
+        Csr<T> c = csr();
+        for (int i = 0; i < c.vertexCount(); i++) {
+            for (int e = c.start(i); e < c.end(i); e++) {
+                consumer.accept(i, c.target(e), c.weight(e));
+            }
+        }
+    }
+
+    public int edgeCount() {
+        if (compact) return csr.edgeCount();
+        int count = 0;
+        for (Map<V<T>, Long> localEdges : edges.values()) {
+            count += localEdges.size();
+        }
+        return count;
+    }
+
     public Stream<E<T>> edgeStream() {
         return edges.entrySet().stream()
                 .flatMap(e -> e.getValue().entrySet().stream()
                         .map(e2 -> new E<>(e.getKey(), e2.getKey(), e2.getValue())));
     }
 
+    /*
+    All edges with a weight below the limit, one by one, ordered by weight; ties are resolved by vertex order.
+    The edges are sorted lazily: a consumer that stops early does not pay for sorting the remainder.
+     */
     public Iterator<Map<V<T>, Map<V<T>, Long>>> edgeIterator(Comparator<Long> comparator, Long limit) {
-        List<E<T>> edges = edgeStream()
-                .filter(e -> limit == null || e.weight() < limit)
-                .sorted((e1, e2) -> comparator.compare(e1.weight(), e2.weight()))
-                .toList();
-        return edges.stream().map(e -> Map.of(e.from(), Map.of(e.to(), e.weight()))).iterator();
+        Csr<T> c = csr();
+        int[] handles = new int[c.edgeCount()];
+        long[] keys = new long[c.edgeCount()];
+        int n = 0;
+        for (int e = 0; e < c.edgeCount(); e++) {
+            long weight = c.weight(e);
+            if (limit == null || weight < limit) {
+                handles[n] = e;
+                keys[n++] = weight;
+            }
+        }
+        int[] sources = new int[n];
+        for (int i = 0, k = 0; i < c.vertexCount() && k < n; i++) {
+            while (k < n && handles[k] < c.end(i)) sources[k++] = i;
+        }
+        LazySort lazySort = new LazySort(keys, n, comparator);
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return lazySort.hasNext();
+            }
+
+            @Override
+            public Map<V<T>, Map<V<T>, Long>> next() {
+                int pos = lazySort.nextInt();
+                int e = handles[pos];
+                return Map.of(c.vertex(sources[pos]), Map.of(c.vertex(c.target(e)), c.weight(e)));
+            }
+        };
     }
 
     public Map<V<T>, Long> incomingVertexWeight(LongBinaryOperator sum) {
         Map<V<T>, Long> map = new HashMap<>();
-        for (Map<V<T>, Long> targets : edges.values()) {
-            for (Map.Entry<V<T>, Long> entry : targets.entrySet()) {
-                map.merge(entry.getKey(), entry.getValue(), sum::applyAsLong);
-            }
-        }
+        forEachEdge((from, to, weight) -> map.merge(to, weight, sum::applyAsLong));
         return map;
     }
 }
@@ -0,0 +1,7 @@
+package org.e2immu.util.internal.graph;
+
+// used by G.forEachIntEdge: from and to are the vertex indices of G.csr()
+@FunctionalInterface
+public interface IntEdgeConsumer {
+    void accept(int from, int to, long weight);
+}
@@ -0,0 +1,204 @@
+package org.e2immu.util.internal.graph;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/*
+Edge map of a subgraph, as a view on the edge map of the graph it was taken from: no edges are copied.
+An edge is visible when both its source and its target are members, and its weight is accepted.
+Rows are filtered on the fly; rows without visible edges are absent, as in every edge map of G.
+
+Subgraphs of subgraphs are flattened, so that there is at most one filtering layer between the base and the user.
+ */
+final class SubGraphEdges<T> extends AbstractMap<V<T>, Map<V<T>, Long>> {
+    private final Map<V<T>, Map<V<T>, Long>> base;
+    private final Map<T, V<T>> members;
+    private final Predicate<Long> acceptEdgePredicate;
+    private final int depth;
+    private int size = -1;
+
+    private SubGraphEdges(Map<V<T>, Map<V<T>, Long>> base, Map<T, V<T>> members, Predicate<Long> acceptEdgePredicate) {
+        this.base = base;
+        this.members = members;
+        this.acceptEdgePredicate = acceptEdgePredicate;
+        this.depth = 1 + G.viewDepth(base);
+    }
+
+    // members must be the vertices of the subgraph
+    static <T> SubGraphEdges<T> of(Map<V<T>, Map<V<T>, Long>> base, Map<T, V<T>> members,
+                                   Predicate<Long> acceptEdgePredicate) {
+        if (base instanceof SubGraphEdges<T> sub) {
+            Map<T, V<T>> intersection = members;
+            for (V<T> v : members.values()) {
+                if (!sub.isMember(v)) {
+                    intersection = new LinkedHashMap<>();
+                    for (V<T> v2 : members.values()) {
+                        if (sub.isMember(v2)) intersection.put(v2.t(), v2);
+                    }
+                    break;
+                }
+            }
+            Predicate<Long> combined = acceptEdgePredicate == null ? sub.acceptEdgePredicate
+                    : sub.acceptEdgePredicate == null ? acceptEdgePredicate
+                    : sub.acceptEdgePredicate.and(acceptEdgePredicate);
+            return new SubGraphEdges<>(sub.base, intersection, combined);
+        }
+        return new SubGraphEdges<>(base, members, acceptEdgePredicate);
+    }
+
+    int depth() {
+        return depth;
+    }
+
+    private boolean isMember(Object o) {
+        return o instanceof V<?> v && members.containsKey(v.t());
+    }
+
+    private boolean accept(V<T> to, long weight) {
+        return isMember(to) && (acceptEdgePredicate == null || acceptEdgePredicate.test(weight));
+    }
+
+    private Map<V<T>, Long> row(V<T> from) {
+        Map<V<T>, Long> row = base.get(from);
+        if (row == null) return null;
+        for (Map.Entry<V<T>, Long> entry : row.entrySet()) {
+            if (accept(entry.getKey(), entry.getValue())) return new Row(row);
+        }
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<V<T>, Long> get(Object key) {
+        return isMember(key) ? row((V<T>) key) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        if (size < 0) {
+            int s = 0;
+            for (V<T> v : members.values()) {
+                if (row(v) != null) s++;
+            }
+            size = s;
+        }
+        return size;
+    }
+
+    @Override
+    public Set<Entry<V<T>, Map<V<T>, Long>>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<V<T>, Map<V<T>, Long>>> iterator() {
+                Iterator<V<T>> iterator = members.values().iterator();
+                return new Iterator<>() {
+                    private Entry<V<T>, Map<V<T>, Long>> next = advance();
+
+                    private Entry<V<T>, Map<V<T>, Long>> advance() {
+                        while (iterator.hasNext()) {
+                            V<T> v = iterator.next();
+                            Map<V<T>, Long> row = row(v);
+                            if (row != null) return new SimpleImmutableEntry<>(v, row);
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next != null;
+                    }
+
+                    @Override
+                    public Entry<V<T>, Map<V<T>, Long>> next() {
+                        if (next == null) throw new NoSuchElementException();
+                        Entry<V<T>, Map<V<T>, Long>> result = next;
+                        next = advance();
+                        return result;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return SubGraphEdges.this.size();
+            }
+        };
+    }
+
+    private class Row extends AbstractMap<V<T>, Long> {
+        private final Map<V<T>, Long> row;
+        private int size = -1;
+
+        Row(Map<V<T>, Long> row) {
+            this.row = row;
+        }
+
+        @Override
+        public Long get(Object key) {
+            if (!isMember(key)) return null;
+            Long weight = row.get(key);
+            return weight == null || acceptEdgePredicate != null && !acceptEdgePredicate.test(weight) ? null : weight;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public int size() {
+            if (size < 0) {
+                int s = 0;
+                for (Map.Entry<V<T>, Long> entry : row.entrySet()) {
+                    if (accept(entry.getKey(), entry.getValue())) s++;
+                }
+                size = s;
+            }
+            return size;
+        }
+
+        @Override
+        public Set<Entry<V<T>, Long>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<V<T>, Long>> iterator() {
+                    Iterator<Entry<V<T>, Long>> iterator = row.entrySet().iterator();
+                    return new Iterator<>() {
+                        private Entry<V<T>, Long> next = advance();
+
+                        private Entry<V<T>, Long> advance() {
+                            while (iterator.hasNext()) {
+                                Entry<V<T>, Long> entry = iterator.next();
+                                if (accept(entry.getKey(), entry.getValue())) return entry;
+                            }
+                            return null;
+                        }
+
+                        @Override
+                        public boolean hasNext() {
+                            return next != null;
+                        }
+
+                        @Override
+                        public Entry<V<T>, Long> next() {
+                            if (next == null) throw new NoSuchElementException();
+                            Entry<V<T>, Long> result = next;
+                            next = advance();
+                            return result;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return Row.this.size();
+                }
+            };
+        }
+    }
+}
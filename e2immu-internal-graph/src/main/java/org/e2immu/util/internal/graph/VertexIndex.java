@@ -0,0 +1,46 @@
+package org.e2immu.util.internal.graph;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+Dense numbering of the vertices of a graph, in the order of G.vertices().
+Graphs with the same vertex map (overlays, compact copies) share the same index.
+ */
+final class VertexIndex<T> {
+    private final V<T>[] vertices;
+    private final Map<V<T>, Integer> index;
+
+    VertexIndex(Collection<V<T>> vertexCollection) {
+        this(vertexCollection.toArray(newArray(0)));
+    }
+
+    VertexIndex(V<T>[] vertices) {
+        this.vertices = vertices;
+        this.index = new HashMap<>(vertices.length * 4 / 3 + 1);
+        for (int i = 0; i < vertices.length; i++) {
+            index.put(vertices[i], i);
+        }
+    }
+
+    // the one place where a generic array is created
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static <T> V<T>[] newArray(int size) {
+        return new V[size];
+    }
+
+    int size() {
+        return vertices.length;
+    }
+
+    V<T> vertex(int i) {
+        return vertices[i];
+    }
+
+    // -1 when v is not a vertex of this graph
+    int indexOf(Object v) {
+        Integer i = index.get(v);
+        return i == null ? -1 : i;
+    }
+}
@@ -0,0 +1,131 @@
+package org.e2immu.util.internal.graph.analyser;
+
+import org.e2immu.util.internal.graph.Csr;
+import org.e2immu.util.internal.graph.G;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/*
+Binary snapshot of a graph: the vertex table followed by the CSR arrays of G.csr().
+Loading maps the file, and copies the arrays in bulk; only the vertex labels are decoded one by one.
+
+Layout, big-endian:
+  int magic, int version, int vertexCount, int edgeCount
+  per vertex: long value, int label length in bytes, UTF-8 label bytes
+  int[vertexCount + 1] offsets, int[edgeCount] targets, long[edgeCount] weights
+ */
+public class GraphSnapshot {
+    public static final String EXTENSION = ".gsnap";
+
+    private static final int MAGIC = 0x45324753; // E2GS
+    private static final int VERSION = 1;
+
+    public interface VertexFactory<T> {
+        T create(int index, String label, long value);
+    }
+
+    public static <T> void write(Path path, G<T> g, Function<T, String> label, ToLongFunction<T> value)
+            throws IOException {
+        Csr<T> csr = g.csr();
+        int n = csr.vertexCount();
+        int m = csr.edgeCount();
+        byte[][] labels = new byte[n][];
+        long size = 16;
+        for (int i = 0; i < n; i++) {
+            labels[i] = label.apply(csr.vertex(i).t()).getBytes(StandardCharsets.UTF_8);
+            size += 12 + labels[i].length;
+        }
+        size += 4L * (n + 1) + 12L * m;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(m);
+            for (int i = 0; i < n; i++) {
+                buffer.putLong(value.applyAsLong(csr.vertex(i).t()));
+                buffer.putInt(labels[i].length).put(labels[i]);
+            }
+            for (int i = 0; i <= n; i++) {
+                buffer.putInt(i == n ? m : csr.start(i));
+            }
+            for (int e = 0; e < m; e++) {
+                buffer.putInt(csr.target(e));
+            }
+            for (int e = 0; e < m; e++) {
+                buffer.putLong(csr.weight(e));
+            }
+            buffer.force();
+        }
+    }
+
+    public static <T> G<T> load(Path path, VertexFactory<T> vertexFactory) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), vertexFactory);
+        }
+    }
+
+    public static <T> G<T> read(ByteBuffer buffer, VertexFactory<T> vertexFactory) throws IOException {
+        if (buffer.remaining() < 16 || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a graph snapshot");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported graph snapshot version " + version);
+        }
+        int n = buffer.getInt();
+        int m = buffer.getInt();
+        if (n < 0 || m < 0) {
+            throw new IOException("Negative vertex or edge count in graph snapshot");
+        }
+        // every vertex takes at least 12 bytes, so n is bounded before anything is allocated
+        if (buffer.remaining() < 12L * n + 4L * (n + 1) + 12L * m) {
+            throw new IOException("Graph snapshot too short for " + n + " vertices and " + m + " edges");
+        }
+        List<T> vertices = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            long value = buffer.getLong();
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                throw new IOException("Invalid label length " + length + " of vertex " + i);
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            vertices.add(vertexFactory.create(i, new String(bytes, StandardCharsets.UTF_8), value));
+        }
+        if (buffer.remaining() < 4L * (n + 1) + 12L * m) {
+            throw new IOException("Graph snapshot too short for " + n + " vertices and " + m + " edges");
+        }
+        int[] offsets = new int[n + 1];
+        buffer.asIntBuffer().get(offsets);
+        buffer.position(buffer.position() + 4 * offsets.length);
+        if (offsets[0] != 0 || offsets[n] != m) {
+            throw new IOException("Offsets in graph snapshot must run from 0 to " + m);
+        }
+        for (int i = 0; i < n; i++) {
+            if (offsets[i] > offsets[i + 1]) {
+                throw new IOException("Decreasing offsets at vertex " + i + " in graph snapshot");
+            }
+        }
+        int[] targets = new int[m];
+        buffer.asIntBuffer().get(targets);
+        buffer.position(buffer.position() + 4 * m);
+        for (int e = 0; e < m; e++) {
+            if (targets[e] < 0 || targets[e] >= n) {
+                throw new IOException("Target " + targets[e] + " of edge " + e + " out of range in graph snapshot");
+            }
+        }
+        long[] weights = new long[m];
+        buffer.asLongBuffer().get(weights);
+        buffer.position(buffer.position() + 8 * m);
+        return G.createCompact(vertices, offsets, targets, weights);
+    }
+}
@@ -5,6 +5,7 @@ import org.e2immu.util.internal.graph.EdgePrinter;
 import org.e2immu.util.internal.graph.G;
 import org.e2immu.util.internal.graph.V;
 import org.e2immu.util.internal.graph.op.BreakCycles;
+import org.e2immu.util.internal.graph.op.FeedbackArcSet;
 import org.e2immu.util.internal.graph.op.GreedyEdgeRemoval;
 import org.e2immu.util.internal.graph.op.ParallelGreedyEdgeRemoval;
 import org.e2immu.util.internal.graph.op.RemoveEdgesByVertexWeight;
@@ -17,6 +18,8 @@ import org.slf4j.LoggerFactory;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -27,16 +30,36 @@ public class Main {
     public static final String SEQUENTIAL = "sequential";
     public static final String PARALLEL = "parallel";
     public static final String VERTEX_WEIGHT = "vertexWeight";
+    public static final String FEEDBACK_ARC_SET = "feedbackArcSet";
 
     public static void main(String[] args) throws IOException {
         new Main().go(args);
     }
 
+    /*
+    args[0]: a GML file, or a binary snapshot (extension GraphSnapshot.EXTENSION), optionally on the classpath
+    args[1]: the method, sequential by default
+     */
     public BreakCycles.Linearization<TypeGraphIO.Node> go(String[] args) throws IOException {
-        String gmlFileName = args[0];
-        try (InputStream inputStream = makeInputStream(gmlFileName)) {
-            String method = args.length > 1 ? args[1] : SEQUENTIAL;
-            return test(inputStream, method);
+        String fileName = args[0];
+        String method = args.length > 1 ? args[1] : SEQUENTIAL;
+        return test(load(fileName), method);
+    }
+
+    public G<TypeGraphIO.Node> load(String location) throws IOException {
+        if (location.endsWith(GraphSnapshot.EXTENSION)) {
+            if (location.startsWith(CLASSPATH)) {
+                try (InputStream inputStream = makeInputStream(location)) {
+                    return TypeGraphIO.readSnapshot(ByteBuffer.wrap(inputStream.readAllBytes()));
+                }
+            }
+            return TypeGraphIO.loadSnapshot(Path.of(location));
+        }
+        try (InputStream inputStream = makeInputStream(location)) {
+            Graph<TypeGraphIO.Node, DefaultWeightedEdge> graph = TypeGraphIO.createPackageGraph();
+            TypeGraphIO.importGraph(inputStream, graph);
+            Map<TypeGraphIO.Node, Map<TypeGraphIO.Node, Long>> map = TypeGraphIO.convertGraphToMap(graph);
+            return G.createCompact(map);
         }
     }
 
@@ -47,19 +70,17 @@ public class Main {
         return new FileInputStream(location);
     }
 
-    private static BreakCycles.Linearization<TypeGraphIO.Node> test(InputStream inputStream,
-                                                                    String method) throws IOException {
-        Graph<TypeGraphIO.Node, DefaultWeightedEdge> graph = TypeGraphIO.createPackageGraph();
-        TypeGraphIO.importGraph(inputStream, graph);
-        Map<TypeGraphIO.Node, Map<TypeGraphIO.Node, Long>> map = TypeGraphIO.convertGraphToMap(graph);
-        G<TypeGraphIO.Node> g = G.create(map);
-        LOGGER.info("Have graph of {} nodes, {} edges", g.vertices().size(), g.edgeStream().count());
+    private static BreakCycles.Linearization<TypeGraphIO.Node> test(G<TypeGraphIO.Node> g, String method) {
+        LOGGER.info("Have graph of {} nodes, {} edges", g.vertices().size(), g.edgeCount());
 
         BreakCycles.ActionComputer<TypeGraphIO.Node> actionComputer;
         if (VERTEX_WEIGHT.equals(method)) {
             LOGGER.info("Minimal vertex weight edge removal algorithm");
             Map<V<TypeGraphIO.Node>, Long> vertexWeights = g.incomingVertexWeight(PackedInt::longSum);
             actionComputer = new RemoveEdgesByVertexWeight<>(vertexWeights);
+        } else if (FEEDBACK_ARC_SET.equals(method)) {
+            LOGGER.info("Weighted Eades-Lin-Smyth feedback arc set algorithm");
+            actionComputer = new FeedbackArcSet<>(PackedInt::weight);
         } else {
             EdgePrinter<TypeGraphIO.Node> edgePrinter = m -> m == null ? "[]"
                     : m.entrySet().stream().map(e -> e.getKey() + "->" +
@@ -48,6 +48,22 @@ public enum PackedInt {
         return sum;
     }
 
+    /*
+    Removal cost of an edge, for FeedbackArcSet: the groups are weighed as digits in base 2^WEIGHT_BITS_PER_GROUP,
+    so that the outgoing or incoming edges of a vertex can be summed without a lower group outweighing a single
+    dependency of a higher group, as long as the counts per group stay below 2^(WEIGHT_BITS_PER_GROUP-BITS_PER_GROUP).
+     */
+    public static final int WEIGHT_BITS_PER_GROUP = 10;
+
+    public static long weight(long packed) {
+        long weight = 0;
+        for (int g = 0; g < GROUPS; g++) {
+            long v = (packed >> (BITS_PER_GROUP * g)) & GROUP_MASK;
+            weight += v << (WEIGHT_BITS_PER_GROUP * g);
+        }
+        return weight;
+    }
+
     public static String nice(int i) {
         if (i == 0) return "0";
         StringBuilder sb = new StringBuilder();
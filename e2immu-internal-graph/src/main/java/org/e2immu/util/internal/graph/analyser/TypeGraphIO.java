@@ -1,7 +1,6 @@
 package org.e2immu.util.internal.graph.analyser;
 
 import org.e2immu.util.internal.graph.G;
-import org.e2immu.util.internal.graph.V;
 import org.jgrapht.Graph;
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.builder.GraphTypeBuilder;
@@ -14,7 +13,10 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -56,6 +58,25 @@ public class TypeGraphIO {
         }
     }
 
+    public static void writeSnapshot(Path path, G<Node> g) throws IOException {
+        GraphSnapshot.write(path, g, Node::getLabel, node -> node.weight);
+    }
+
+    public static G<Node> readSnapshot(ByteBuffer buffer) throws IOException {
+        return GraphSnapshot.read(buffer, TypeGraphIO::newNode);
+    }
+
+    public static G<Node> loadSnapshot(Path path) throws IOException {
+        return GraphSnapshot.load(path, TypeGraphIO::newNode);
+    }
+
+    private static Node newNode(int id, String label, long weight) {
+        Node node = new Node(id);
+        node.label = label;
+        node.weight = weight;
+        return node;
+    }
+
     public static class Node {
         final int id;
         String label;
@@ -100,24 +121,21 @@ public class TypeGraphIO {
                         .edgeClass(DefaultWeightedEdge.class)
                         .weighted(true)
                         .buildGraph();
-        for (Map.Entry<V<T>, Map<V<T>, Long>> entry : typeGraph.edges()) {
-            T typeInfo = entry.getKey().t();
+        // weight of a vertex is the sum of its outgoing edge weights
+        Map<T, Long> vertexWeights = new HashMap<>();
+        typeGraph.forEachEdge((from, to, weight) -> {
+            T typeInfo = from.t();
             if (!graph.containsVertex(typeInfo)) graph.addVertex(typeInfo);
-            for (Map.Entry<V<T>, Long> e2 : entry.getValue().entrySet()) {
-                T target = e2.getKey().t();
-                if (!graph.containsVertex(target)) graph.addVertex(target);
-                DefaultWeightedEdge e = graph.addEdge(typeInfo, target);
-                graph.setEdgeWeight(e, e2.getValue());
-            }
-        }
+            T target = to.t();
+            if (!graph.containsVertex(target)) graph.addVertex(target);
+            DefaultWeightedEdge e = graph.addEdge(typeInfo, target);
+            graph.setEdgeWeight(e, weight);
+            vertexWeights.merge(typeInfo, weight, Long::sum);
+        });
         Function<T, Map<String, Attribute>> vertexAttributeProvider = (v) -> {
             Map<String, Attribute> map = new LinkedHashMap<>();
             map.put("label", DefaultAttribute.createAttribute(v.toString()));
-            V<T> vertex = typeGraph.vertex(v);
-            Map<V<T>, Long> edges = typeGraph.edges(vertex);
-            // weight is the sum of the outgoing edge weights
-            long sum = edges == null ? 0L : edges.values().stream().mapToLong(x -> x).sum();
-            map.put("weight", DefaultAttribute.createAttribute(sum));
+            map.put("weight", DefaultAttribute.createAttribute(vertexWeights.getOrDefault(v, 0L)));
             return map;
         };
         exportWeightedGraph(graph, vertexAttributeProvider, file);
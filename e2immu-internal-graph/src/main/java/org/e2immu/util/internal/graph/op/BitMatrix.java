@@ -0,0 +1,92 @@
+package org.e2immu.util.internal.graph.op;
+
+import java.util.Map;
+
+/*
+Adjacency matrix of a dense subgraph, one bit per edge: row r, as 'words' longs, holds the targets of vertex r.
+Vertices are numbered locally, from 0 to size-1.
+
+A breadth-first search then expands a vertex by OR-ing its row into the next frontier, 64 targets per operation,
+instead of looking at its edges one by one; the loops over the words are simple enough for the JIT to vectorize.
+That only pays off when the vertices have many edges, see isWorthIt.
+ */
+final class BitMatrix {
+    // at most 16 MB per matrix
+    static final long MAX_WORDS = 1L << 21;
+
+    private final int size;
+    private final int words;
+    private final long[] rows;
+
+    BitMatrix(int size) {
+        this.size = size;
+        this.words = (size + 63) >>> 6;
+        this.rows = new long[size * words];
+    }
+
+    /*
+    A search visits every vertex once: that costs 'edges' steps on adjacency lists, and size * words on the matrix.
+     */
+    static boolean isWorthIt(int size, long edges) {
+        long words = (size + 63) >>> 6;
+        return size >= 64 && size * words <= MAX_WORDS && edges >= 2 * size * words;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int words() {
+        return words;
+    }
+
+    void set(int row, int column) {
+        rows[row * words + (column >>> 6)] |= 1L << column;
+    }
+
+    long[] row(int row) {
+        long[] copy = new long[words];
+        System.arraycopy(rows, row * words, copy, 0, words);
+        return copy;
+    }
+
+    /*
+    Whether all vertices in 'targets' can be reached from 'start'. The rows of the vertices in 'replacedRows'
+    are replaced by the given bits, which allows for searching without some edges.
+     */
+    boolean reachesAll(int start, long[] targets, Map<Integer, long[]> replacedRows) {
+        long[] visited = new long[words];
+        long[] frontier = new long[words];
+        long[] next = new long[words];
+        visited[start >>> 6] |= 1L << start;
+        frontier[start >>> 6] |= 1L << start;
+        while (true) {
+            for (int w = 0; w < words; w++) {
+                long bits = frontier[w];
+                while (bits != 0) {
+                    int v = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    long[] replaced = replacedRows.get(v);
+                    if (replaced != null) {
+                        for (int j = 0; j < words; j++) next[j] |= replaced[j];
+                    } else {
+                        int offset = v * words;
+                        for (int j = 0; j < words; j++) next[j] |= rows[offset + j];
+                    }
+                }
+            }
+            boolean any = false;
+            boolean all = true;
+            for (int j = 0; j < words; j++) {
+                long fresh = next[j] & ~visited[j];
+                frontier[j] = fresh;
+                visited[j] |= fresh;
+                next[j] = 0;
+                any |= fresh != 0;
+                all &= (targets[j] & ~visited[j]) == 0;
+            }
+            if (all) return true;
+            if (!any) return false;
+        }
+    }
+}
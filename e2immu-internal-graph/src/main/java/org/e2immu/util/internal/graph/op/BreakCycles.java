@@ -1,11 +1,15 @@
 package org.e2immu.util.internal.graph.op;
 
+import org.e2immu.util.internal.graph.Csr;
 import org.e2immu.util.internal.graph.G;
 import org.e2immu.util.internal.graph.V;
+import org.e2immu.util.internal.graph.util.LazySort;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.function.LongBinaryOperator;
 import java.util.stream.Collectors;
 
@@ -49,15 +53,29 @@ public class BreakCycles<T> {
     }
 
     private final ActionComputer<T> actionComputer;
+    private final ForkJoinPool pool;
 
     public BreakCycles(ActionComputer<T> actionComputer) {
+        this(actionComputer, null);
+    }
+
+    /*
+    When a pool is given, the remaining cycles of each linearization are broken concurrently, in that pool.
+    They are disjoint, and the results are combined in the order of the cycles, so the linearization and the action
+    log are the same as without a pool. The action computer must then be thread-safe.
+     */
+    public BreakCycles(ActionComputer<T> actionComputer, ForkJoinPool pool) {
         this.actionComputer = actionComputer;
+        this.pool = pool;
     }
 
     // list: sequential
     // set: parallel, these elements are independent (have no edges between them), can be "processed" in parallel
     // set: grouped, cycles cannot be broken here, must be processed together
     public Linearization<T> go(G<T> g) {
+        if (pool != null) {
+            return pool.invoke(ForkJoinTask.adapt(() -> go2(g, true)));
+        }
         return go2(g, true);
     }
 
@@ -88,20 +106,14 @@ public class BreakCycles<T> {
                             .collect(Collectors.joining(",")));
         }
         Set<Cycle<T>> cycles = new LinkedHashSet<>();
-        for (Cycle<T> cycle : r.remainingCycles()) {
-            LOGGER.info("Starting cycle of size {}", cycle.size());
-            Action<T> action = actionComputer.compute(g, cycle);
-            if (action == null) {
+        for (BrokenCycle<T> brokenCycle : breakCycles(g, r.remainingCycles())) {
+            if (brokenCycle.linearization == null) {
                 // unbreakable cycle
-                cycles.add(cycle);
+                cycles.add(brokenCycle.cycle);
             } else {
-                // apply the action
-                G<T> newG = action.apply();
-                assert !newG.equals(g);
-                Linearization<T> lin = go2(newG, false);
-                newLinearizations.add(lin.list);
-                actionLog.add(action.info());
-                actionLog.addAll(lin.actionLog);
+                newLinearizations.add(brokenCycle.linearization.list);
+                actionLog.add(brokenCycle.info);
+                actionLog.addAll(brokenCycle.linearization.actionLog);
             }
         }
         if(!cycles.isEmpty()) {
@@ -118,14 +130,51 @@ public class BreakCycles<T> {
         return new Linearization<>(sets, immutableActionLog);
     }
 
+    // linearization and info are null when the cycle cannot be broken
+    private record BrokenCycle<T>(Cycle<T> cycle, Linearization<T> linearization, ActionInfo info) {
+    }
+
+    private List<BrokenCycle<T>> breakCycles(G<T> g, Cycles<T> remainingCycles) {
+        if (pool == null || remainingCycles.size() < 2) {
+            List<BrokenCycle<T>> result = new ArrayList<>(remainingCycles.size());
+            for (Cycle<T> cycle : remainingCycles) {
+                result.add(breakCycle(g, cycle));
+            }
+            return result;
+        }
+        // we are running inside the pool: see go()
+        List<ForkJoinTask<BrokenCycle<T>>> tasks = new ArrayList<>(remainingCycles.size());
+        for (Cycle<T> cycle : remainingCycles) {
+            tasks.add(ForkJoinTask.adapt(() -> breakCycle(g, cycle)));
+        }
+        ForkJoinTask.invokeAll(tasks);
+        return tasks.stream().map(ForkJoinTask::join).toList();
+    }
+
+    private BrokenCycle<T> breakCycle(G<T> g, Cycle<T> cycle) {
+        LOGGER.info("Starting cycle of size {}", cycle.size());
+        Action<T> action = actionComputer.compute(g, cycle);
+        if (action == null) {
+            return new BrokenCycle<>(cycle, null, null);
+        }
+        // apply the action
+        G<T> newG = action.apply();
+        assert !newG.equals(g);
+        Linearization<T> lin = go2(newG, false);
+        return new BrokenCycle<>(cycle, lin, action.info());
+    }
+
     private List<Set<Cycle<T>>> attachNonProblematicNodes(G<T> g, Hierarchy<T> attachedToCycles, List<Set<Cycle<T>>> input) {
-        Map<V<T>, Integer> positionOfVertex = new LinkedHashMap<>();
+        Csr<T> c = g.csr();
+        // indexed by the vertex indices of g; -1 when the vertex has not been placed yet
+        int[] positionOfVertex = new int[c.vertexCount()];
+        Arrays.fill(positionOfVertex, -1);
         List<Set<Cycle<T>>> result = new ArrayList<>(input.size());
         int i = 0;
         for (Set<Cycle<T>> set : input) {
             for (Cycle<T> set2 : set) {
                 for (V<T> t : set2.vertices()) {
-                    positionOfVertex.put(t, i);
+                    positionOfVertex[c.indexOf(t)] = i;
                 }
             }
             i++;
@@ -134,10 +183,12 @@ public class BreakCycles<T> {
         for (Set<V<T>> set : attachedToCycles.list()) {
             Set<Cycle<T>> newSet = new LinkedHashSet<>();
             for (V<T> from : set) {
-                Map<V<T>, Long> edges = g.edges(from);
-                assert edges != null;
-                int maxPosition = edges.keySet()
-                        .stream().mapToInt(to -> positionOfVertex.getOrDefault(to, -1)).max().orElseThrow();
+                int index = c.indexOf(from);
+                assert c.outDegree(index) > 0;
+                int maxPosition = -1;
+                for (int e = c.start(index); e < c.end(index); e++) {
+                    maxPosition = Math.max(maxPosition, positionOfVertex[c.target(e)]);
+                }
                 if (maxPosition == result.size() - 1) {
                     newSet.add(new Cycle<>(Set.of(from)));
                 } else {
@@ -145,7 +196,7 @@ public class BreakCycles<T> {
                     Set<Cycle<T>> toAdd = result.get(maxPosition + 1);
                     toAdd.add(new Cycle<>(Set.of(from)));
                 }
-                positionOfVertex.put(from, maxPosition + 1);
+                positionOfVertex[index] = maxPosition + 1;
             }
             if (!newSet.isEmpty()) {
                 result.add(newSet);
@@ -179,32 +230,66 @@ public class BreakCycles<T> {
     public record EdgeRemoval2<T>(Map<V<T>, Set<V<T>>> edges) implements ActionInfo {
     }
 
-    private record VertexAndSomeEdges<T>(Map<V<T>, Map<V<T>, Long>> edges, long sum) {
-    }
-
+    /*
+    Candidates for removal: every edge below the limit on its own, and, for vertices with more than one such edge,
+    all of them together, weighted by their sum. Candidates are produced lazily, ordered by weight; ties are
+    resolved by vertex order, single edges before the bundle of the same vertex.
+     */
     public static <T> Iterator<Map<V<T>, Map<V<T>, Long>>> edgeIterator2(G<T> g,
                                                                          Comparator<Long> comparator,
                                                                          Long limit,
                                                                          LongBinaryOperator sumWeights) {
-        List<VertexAndSomeEdges<T>> list = new LinkedList<>();
-        for (Map.Entry<V<T>, Map<V<T>, Long>> entry : g.edges()) {
-            Map<V<T>, Long> multiEdges = new LinkedHashMap<>();
+        Csr<T> c = g.csr();
+        // handle >= 0: a single edge, index in the CSR arrays; handle < 0: the bundle of vertex ~handle
+        int[] handles = new int[c.edgeCount() + c.vertexCount()];
+        int[] sources = new int[handles.length];
+        long[] keys = new long[handles.length];
+        int n = 0;
+        for (int i = 0; i < c.vertexCount(); i++) {
+            int accepted = 0;
             long sum = 0;
-            for (Map.Entry<V<T>, Long> e2 : entry.getValue().entrySet()) {
-                long weight = e2.getValue();
+            for (int e = c.start(i); e < c.end(i); e++) {
+                long weight = c.weight(e);
                 if (limit == null || weight < limit) {
-                    multiEdges.put(e2.getKey(), weight);
                     sum = sumWeights.applyAsLong(sum, weight);
-                    list.add(new VertexAndSomeEdges<>(Map.of(entry.getKey(), Map.of(e2.getKey(), weight)), weight));
+                    accepted++;
+                    handles[n] = e;
+                    sources[n] = i;
+                    keys[n++] = weight;
                 }
             }
-            if (multiEdges.size() > 1) {
-                list.add(new VertexAndSomeEdges<>(Map.of(entry.getKey(), multiEdges), sum));
+            if (accepted > 1) {
+                handles[n] = ~i;
+                sources[n] = i;
+                keys[n++] = sum;
             }
         }
-        return list.stream().sorted((v1, v2) -> comparator.compare(v1.sum, v2.sum))
-                .map(vase -> vase.edges)
-                .iterator();
+        LazySort lazySort = new LazySort(keys, n, comparator);
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return lazySort.hasNext();
+            }
+
+            @Override
+            public Map<V<T>, Map<V<T>, Long>> next() {
+                int pos = lazySort.nextInt();
+                int handle = handles[pos];
+                V<T> from = c.vertex(sources[pos]);
+                if (handle >= 0) {
+                    return Map.of(from, Map.of(c.vertex(c.target(handle)), c.weight(handle)));
+                }
+                int i = ~handle;
+                Map<V<T>, Long> multiEdges = new LinkedHashMap<>();
+                for (int e = c.start(i); e < c.end(i); e++) {
+                    long weight = c.weight(e);
+                    if (limit == null || weight < limit) {
+                        multiEdges.put(c.vertex(c.target(e)), weight);
+                    }
+                }
+                return Map.of(from, multiEdges);
+            }
+        };
     }
 
 }
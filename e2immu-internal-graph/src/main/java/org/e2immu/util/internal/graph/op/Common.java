@@ -1,5 +1,6 @@
 package org.e2immu.util.internal.graph.op;
 
+import org.e2immu.util.internal.graph.Csr;
 import org.e2immu.util.internal.graph.G;
 import org.e2immu.util.internal.graph.V;
 
@@ -11,18 +12,33 @@ public class Common {
         return follow(g, List.of(startingPoint), true);
     }
 
+    /*
+    Breadth-first, on the vertex indices of the graph: the visited set is a bit set, the queue an int array.
+     */
     public static <T> Set<V<T>> follow(G<T> g, Collection<V<T>> startingPoints, boolean includeStartingPoints) {
         assert startingPoints != null;
-        List<V<T>> toDo = new LinkedList<>(startingPoints);
+        Csr<T> c = g.csr();
+        BitSet visited = new BitSet(c.vertexCount());
+        // every vertex enters the queue at most once, apart from the starting points
+        int[] queue = new int[c.vertexCount() + startingPoints.size()];
+        int head = 0;
+        int tail = 0;
         Set<V<T>> connected = includeStartingPoints ? new LinkedHashSet<>(startingPoints) : new LinkedHashSet<>();
-        while (!toDo.isEmpty()) {
-            V<T> v = toDo.removeFirst();
-            Map<V<T>, Long> edges = g.edges(v);
-            if (edges != null) {
-                for (V<T> to : edges.keySet()) {
-                    if (connected.add(to)) {
-                        toDo.add(to);
-                    }
+        for (V<T> v : startingPoints) {
+            int i = c.indexOf(v);
+            if (i >= 0) {
+                queue[tail++] = i;
+                if (includeStartingPoints) visited.set(i);
+            }
+        }
+        while (head < tail) {
+            int i = queue[head++];
+            for (int e = c.start(i); e < c.end(i); e++) {
+                int to = c.target(e);
+                if (!visited.get(to)) {
+                    visited.set(to);
+                    connected.add(c.vertex(to));
+                    queue[tail++] = to;
                 }
             }
         }
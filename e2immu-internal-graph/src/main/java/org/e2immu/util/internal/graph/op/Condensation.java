@@ -0,0 +1,150 @@
+package org.e2immu.util.internal.graph.op;
+
+import org.e2immu.util.internal.graph.Csr;
+import org.e2immu.util.internal.graph.G;
+import org.e2immu.util.internal.graph.V;
+
+import java.util.*;
+
+/*
+The condensation of a graph: every strongly connected component becomes one node, and the edges between components
+form a directed acyclic graph. Components are numbered as in StronglyConnectedComponents: every edge goes from
+a higher to a lower number.
+
+The level of a component follows the rule of Linearize: 0 when it has no edges to other components, otherwise one
+more than the highest level of the components it has edges to. On an acyclic graph, the levels of the vertices are
+exactly those of Linearize.linearize(g).linearized().
+
+All lookups are array accesses on the vertex indices of G.csr().
+ */
+public class Condensation<T> {
+    private final Csr<T> c;
+    private final int[] component;
+    private final int count;
+    // the vertices of component k are members[memberStart[k]..memberStart[k+1]), in vertex order
+    private final int[] memberStart;
+    private final int[] members;
+    // the edges between components, without duplicates
+    private final int[] edgeStart;
+    private final int[] edgeTargets;
+    private final int[] level;
+    private final int levelCount;
+
+    private Condensation(Csr<T> c, StronglyConnectedComponents scc) {
+        this.c = c;
+        int n = c.vertexCount();
+        count = scc.count();
+        component = new int[n];
+        memberStart = new int[count + 1];
+        for (int i = 0; i < n; i++) {
+            component[i] = scc.component(i);
+            memberStart[component[i] + 1]++;
+        }
+        for (int k = 0; k < count; k++) memberStart[k + 1] += memberStart[k];
+        int[] next = Arrays.copyOf(memberStart, count);
+        members = new int[n];
+        for (int i = 0; i < n; i++) members[next[component[i]]++] = i;
+
+        edgeStart = new int[count + 1];
+        int[] targets = new int[c.edgeCount()];
+        int edges = 0;
+        // lastSeen[k'] == k + 1 when the edge k -> k' has been recorded
+        int[] lastSeen = new int[count];
+        level = new int[count];
+        int maxLevel = -1;
+        // lower components first: their levels are known when a higher one refers to them
+        for (int k = 0; k < count; k++) {
+            edgeStart[k] = edges;
+            int l = 0;
+            for (int m = memberStart[k]; m < memberStart[k + 1]; m++) {
+                int i = members[m];
+                for (int e = c.start(i); e < c.end(i); e++) {
+                    int to = component[c.target(e)];
+                    if (to != k && lastSeen[to] != k + 1) {
+                        lastSeen[to] = k + 1;
+                        targets[edges++] = to;
+                        l = Math.max(l, level[to] + 1);
+                    }
+                }
+            }
+            level[k] = l;
+            maxLevel = Math.max(maxLevel, l);
+        }
+        edgeStart[count] = edges;
+        edgeTargets = Arrays.copyOf(targets, edges);
+        levelCount = maxLevel + 1;
+    }
+
+    public static <T> Condensation<T> of(G<T> g) {
+        return new Condensation<>(g.csr(), StronglyConnectedComponents.of(g));
+    }
+
+    public int componentCount() {
+        return count;
+    }
+
+    // the component of the vertex with index i in G.csr()
+    public int component(int i) {
+        return component[i];
+    }
+
+    public int component(V<T> v) {
+        return component[c.indexOf(v)];
+    }
+
+    public int size(int k) {
+        return memberStart[k + 1] - memberStart[k];
+    }
+
+    // the vertex indices of component k, in increasing order
+    public int[] members(int k) {
+        return Arrays.copyOfRange(members, memberStart[k], memberStart[k + 1]);
+    }
+
+    public Set<V<T>> vertices(int k) {
+        Set<V<T>> set = new LinkedHashSet<>();
+        for (int m = memberStart[k]; m < memberStart[k + 1]; m++) {
+            set.add(c.vertex(members[m]));
+        }
+        return set;
+    }
+
+    // the components that component k has edges to; all of them are lower than k
+    public int[] successors(int k) {
+        return Arrays.copyOfRange(edgeTargets, edgeStart[k], edgeStart[k + 1]);
+    }
+
+    public int level(int k) {
+        return level[k];
+    }
+
+    public int levelOfVertex(int i) {
+        return level[component[i]];
+    }
+
+    public int levelCount() {
+        return levelCount;
+    }
+
+    // the components, grouped by level, starting at level 0; within a level, in increasing order
+    public List<int[]> levels() {
+        int[] size = new int[levelCount];
+        for (int k = 0; k < count; k++) size[level[k]]++;
+        List<int[]> result = new ArrayList<>(levelCount);
+        for (int l = 0; l < levelCount; l++) result.add(new int[size[l]]);
+        int[] next = new int[levelCount];
+        for (int k = 0; k < count; k++) result.get(level[k])[next[level[k]]++] = k;
+        return result;
+    }
+
+    // the components per level, each as a Cycle, also when it consists of a single vertex
+    public List<Set<Cycle<T>>> cycleLevels() {
+        List<Set<Cycle<T>>> result = new ArrayList<>(levelCount);
+        for (int[] components : levels()) {
+            Set<Cycle<T>> set = new LinkedHashSet<>();
+            for (int k : components) set.add(new Cycle<>(vertices(k)));
+            result.add(set);
+        }
+        return result;
+    }
+}
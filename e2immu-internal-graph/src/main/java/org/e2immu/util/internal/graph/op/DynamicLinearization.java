@@ -0,0 +1,218 @@
+package org.e2immu.util.internal.graph.op;
+
+import org.e2immu.util.internal.graph.Csr;
+import org.e2immu.util.internal.graph.G;
+import org.e2immu.util.internal.graph.V;
+
+import java.util.*;
+
+/*
+The linear hierarchy of a directed acyclic graph, kept up to date while edges are added and removed.
+
+The level of a vertex is the one Linearize assigns to it: 0 for a vertex without outgoing edges, otherwise one more
+than the highest level of its targets. Self-loops are ignored, as in Linearize. Every edge goes from a higher to
+a lower level, so the levels form a topological order, in the spirit of Pearce-Kelly.
+
+Adding an edge from->to only changes something when level(from) <= level(to). Then 'from', and those of its
+predecessors that depend on it, move up; they are processed in increasing order of their old level, so that each
+of them is visited once. If 'from' can be reached from 'to', the edge would close a cycle; the propagation then
+arrives at 'to', and the edge is rejected. Removing an edge works the other way around: 'from', and the
+predecessors that depend on it, can move down.
+In both cases, the work is proportional to the number of vertices that change level, and their edges.
+
+Within a level, vertices are ordered by the order in which they were added. When the initial graph's vertices
+come first, hierarchy() equals Linearize.linearize(graph()).linearized().
+
+Instances are not thread-safe.
+ */
+public class DynamicLinearization<T> {
+    private final Map<V<T>, Integer> ids = new HashMap<>();
+    private final List<V<T>> vertices = new ArrayList<>();
+    private final List<Map<Integer, Long>> out = new ArrayList<>();
+    // incoming edges, without self-loops
+    private final List<Set<Integer>> in = new ArrayList<>();
+    private final List<BitSet> levels = new ArrayList<>();
+    private int[] level = new int[16];
+
+    public DynamicLinearization() {
+    }
+
+    /*
+    Starts from the vertices and edges of g, which must be acyclic: break the cycles first, e.g., with BreakCycles.
+     */
+    public DynamicLinearization(G<T> g) {
+        Csr<T> c = g.csr();
+        int n = c.vertexCount();
+        for (int i = 0; i < n; i++) {
+            id(c.vertex(i));
+        }
+        g.forEachIntEdge((from, to, weight) -> {
+            out.get(from).put(to, weight);
+            if (from != to) in.get(to).add(from);
+        });
+        KahnLevels kahnLevels = new KahnLevels(c, false);
+        levels.clear();
+        while (kahnLevels.hasNext()) {
+            BitSet bitSet = new BitSet(n);
+            for (int i : kahnLevels.next()) {
+                bitSet.set(i);
+                level[i] = levels.size();
+            }
+            levels.add(bitSet);
+        }
+        if (kahnLevels.placed() < n) {
+            throw new IllegalArgumentException("The graph contains cycles");
+        }
+    }
+
+    public int vertexCount() {
+        return vertices.size();
+    }
+
+    // -1 when v is not known
+    public int level(V<T> v) {
+        Integer id = ids.get(v);
+        return id == null ? -1 : level[id];
+    }
+
+    public void addVertex(V<T> v) {
+        id(v);
+    }
+
+    /*
+    Adds the edge, and its vertices when they are not yet known. The weight of an existing edge is replaced.
+    Returns null when the graph stays acyclic. Otherwise, the edge is not added, and the cycle it would close
+    is returned, starting at 'to' and ending at 'from'.
+     */
+    public Cycle<T> addEdge(V<T> from, V<T> to, long weight) {
+        int u = id(from);
+        int w = id(to);
+        Map<Integer, Long> edges = out.get(u);
+        if (u != w && !edges.containsKey(w) && level[u] <= level[w]) {
+            Cycle<T> cycle = raise(u, w);
+            if (cycle != null) return cycle;
+        }
+        edges.put(w, weight);
+        if (u != w) in.get(w).add(u);
+        return null;
+    }
+
+    /*
+    Returns false when the edge is not present.
+     */
+    public boolean removeEdge(V<T> from, V<T> to) {
+        Integer u = ids.get(from);
+        Integer w = ids.get(to);
+        if (u == null || w == null || out.get(u).remove(w) == null) return false;
+        if (!u.equals(w)) {
+            in.get(w).remove(u);
+            lower(u);
+        }
+        return true;
+    }
+
+    public Hierarchy<T> hierarchy() {
+        List<Set<V<T>>> list = new ArrayList<>();
+        for (BitSet bitSet : levels) {
+            // levels cannot have gaps: a vertex at level l > 0 has a target at level l-1
+            if (bitSet.isEmpty()) break;
+            Set<V<T>> set = new LinkedHashSet<>();
+            for (int i = bitSet.nextSetBit(0); i >= 0; i = bitSet.nextSetBit(i + 1)) {
+                set.add(vertices.get(i));
+            }
+            list.add(set);
+        }
+        return new Hierarchy<>(list);
+    }
+
+    public G<T> graph() {
+        Map<T, Map<T, Long>> map = new LinkedHashMap<>();
+        for (int i = 0; i < vertices.size(); i++) {
+            Map<T, Long> edges = new LinkedHashMap<>();
+            for (Map.Entry<Integer, Long> entry : out.get(i).entrySet()) {
+                edges.put(vertices.get(entry.getKey()).t(), entry.getValue());
+            }
+            map.put(vertices.get(i).t(), edges);
+        }
+        return G.create(map);
+    }
+
+    private int id(V<T> v) {
+        Integer id = ids.get(v);
+        if (id != null) return id;
+        int newId = vertices.size();
+        ids.put(v, newId);
+        vertices.add(v);
+        out.add(new LinkedHashMap<>());
+        in.add(new HashSet<>());
+        if (newId == level.length) level = Arrays.copyOf(level, 2 * newId);
+        moveTo(newId, 0);
+        return newId;
+    }
+
+    private void moveTo(int i, int newLevel) {
+        while (levels.size() <= newLevel) levels.add(new BitSet());
+        levels.get(level[i]).clear(i);
+        level[i] = newLevel;
+        levels.get(newLevel).set(i);
+    }
+
+    /*
+    The new levels are computed aside, and only applied when the edge u->w does not close a cycle.
+     */
+    private Cycle<T> raise(int u, int w) {
+        Map<Integer, Integer> raised = new HashMap<>();
+        // the edge x->next.get(x) is the reason why x was raised
+        Map<Integer, Integer> next = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>(Comparator.comparingInt(x -> level[x]));
+        raised.put(u, level[w] + 1);
+        next.put(u, w);
+        queue.add(u);
+        while (!queue.isEmpty()) {
+            int x = queue.poll();
+            int required = raised.get(x) + 1;
+            for (int p : in.get(x)) {
+                if (raised.getOrDefault(p, level[p]) < required) {
+                    next.put(p, x);
+                    if (p == w) return cycle(w, u, next);
+                    if (raised.put(p, required) == null) queue.add(p);
+                }
+            }
+        }
+        raised.forEach(this::moveTo);
+        return null;
+    }
+
+    private Cycle<T> cycle(int w, int u, Map<Integer, Integer> next) {
+        Set<V<T>> path = new LinkedHashSet<>();
+        int x = w;
+        path.add(vertices.get(x));
+        while (x != u) {
+            x = next.get(x);
+            path.add(vertices.get(x));
+        }
+        return new Cycle<>(path);
+    }
+
+    private void lower(int u) {
+        PriorityQueue<Integer> queue = new PriorityQueue<>(Comparator.comparingInt(x -> level[x]));
+        Set<Integer> queued = new HashSet<>();
+        queue.add(u);
+        queued.add(u);
+        while (!queue.isEmpty()) {
+            int x = queue.poll();
+            int newLevel = 0;
+            for (int to : out.get(x).keySet()) {
+                if (to != x) newLevel = Math.max(newLevel, level[to] + 1);
+            }
+            int oldLevel = level[x];
+            if (newLevel < oldLevel) {
+                // x has been removed from the queue, so changing its level does not upset the ordering
+                moveTo(x, newLevel);
+                for (int p : in.get(x)) {
+                    if (level[p] == oldLevel + 1 && queued.add(p)) queue.add(p);
+                }
+            }
+        }
+    }
+}
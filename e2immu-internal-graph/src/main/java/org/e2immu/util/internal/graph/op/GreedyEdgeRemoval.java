@@ -8,8 +8,7 @@ import org.e2immu.util.internal.graph.util.TimedLogger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Iterator;
-import java.util.Map;
+import java.util.*;
 
 public class GreedyEdgeRemoval<T> implements BreakCycles.ActionComputer<T> {
     private static final Logger LOGGER = LoggerFactory.getLogger(GreedyEdgeRemoval.class);
@@ -17,45 +16,87 @@ public class GreedyEdgeRemoval<T> implements BreakCycles.ActionComputer<T> {
     private final EdgePrinter<T> edgePrinter;
     private final EdgeIterator<T> edgeIterator;
     private final TimedLogger timedLogger;
+    private final int batchSize;
+    private final double tolerance;
 
     public GreedyEdgeRemoval() {
         this(Object::toString, g -> g.edgeIterator(Long::compareTo, null), null);
     }
 
     public GreedyEdgeRemoval(EdgePrinter<T> edgePrinter, EdgeIterator<T> edgeIterator, TimedLogger timedLogger) {
+        this(edgePrinter, edgeIterator, timedLogger, 1, 0.0);
+    }
+
+    /*
+    Batch mode: rather than only the best candidate, remove up to 'batchSize' candidates at once, chosen from those
+    whose quality is at most (1 + tolerance) times the best quality, best first, ties in iterator order.
+    A candidate is skipped when it shares a vertex with one that has already been chosen, so that the chosen
+    candidates act on different parts of the cycle. This saves rounds of BreakCycles, each of which scores all
+    candidates again. Removing more edges never makes the quality worse.
+     */
+    public GreedyEdgeRemoval(EdgePrinter<T> edgePrinter, EdgeIterator<T> edgeIterator, TimedLogger timedLogger,
+                             int batchSize, double tolerance) {
+        assert batchSize >= 1 && tolerance >= 0;
         this.edgePrinter = edgePrinter;
         this.edgeIterator = edgeIterator;
         this.timedLogger = timedLogger;
+        this.batchSize = batchSize;
+        this.tolerance = tolerance;
+    }
+
+    private record Candidate<T>(int quality, int position, Map<V<T>, Map<V<T>, Long>> edgesToRemove) {
+    }
+
+    private int cutOff(int bestQuality) {
+        return (int) Math.floor(bestQuality * (1.0 + tolerance));
     }
 
     @Override
     public BreakCycles.Action<T> compute(G<T> inputGraph, Cycle<T> cycle) {
-        G<T> g = inputGraph.subGraph(cycle.vertices());
+        G<T> g = inputGraph.subGraph(cycle.vertices()).materialize();
 
         int bestQuality = cycle.size();
         assert bestQuality > 0;
-        G<T> bestSubGraph = null;
+        IncrementalQuality<T> incrementalQuality = new IncrementalQuality<>(g);
         Map<V<T>, Map<V<T>, Long>> bestEdgesToRemove = null;
+        // batch mode only: the candidates that may end up within the cut-off
+        List<Candidate<T>> candidates = batchSize > 1 ? new ArrayList<>() : null;
         int count = 0;
         Iterator<Map<V<T>, Map<V<T>, Long>>> iterator = edgeIterator.iterator(g);
         while (iterator.hasNext() && bestQuality > 0) {
             Map<V<T>, Map<V<T>, Long>> edgesToRemove = iterator.next();
-            G<T> withoutEdges = g.withFewerEdgesMap(edgesToRemove);
-            int quality = Linearize.qualityBasedOnTotalCluster(withoutEdges);
-            if (quality < bestQuality) {
-                bestSubGraph = withoutEdges;
-                bestQuality = quality;
-                bestEdgesToRemove = edgesToRemove;
+            if (batchSize == 1) {
+                int quality = incrementalQuality.quality(edgesToRemove, bestQuality);
+                if (quality < bestQuality) {
+                    bestQuality = quality;
+                    bestEdgesToRemove = edgesToRemove;
+                }
+            } else {
+                // exact up to the cut-off, and only improvements on the cycle count
+                int bound = Math.min(cycle.size(), cutOff(bestQuality) + 1);
+                int quality = incrementalQuality.quality(edgesToRemove, bound);
+                if (quality < bound) {
+                    candidates.add(new Candidate<>(quality, count, edgesToRemove));
+                    if (quality < bestQuality) {
+                        bestQuality = quality;
+                        bestEdgesToRemove = edgesToRemove;
+                    }
+                }
             }
             ++count;
             if (timedLogger != null) {
                 timedLogger.info("Edge removal, done {}, best {}", count, bestQuality);
             }
         }
-        LOGGER.info("Best choice for greedy edge removal is {}, quality now {}",
-                edgePrinter.print(bestEdgesToRemove), bestQuality);
         if (bestQuality < cycle.size()) {
-            G<T> finalGraph = bestSubGraph.subGraph(cycle.vertices());
+            if (batchSize > 1) {
+                bestEdgesToRemove = batch(candidates, bestQuality);
+                // removing more edges never makes the quality worse, so it is below the cycle's size, and exact
+                bestQuality = incrementalQuality.quality(bestEdgesToRemove, cycle.size());
+            }
+            LOGGER.info("Best choice for greedy edge removal is {}, quality now {}",
+                    edgePrinter.print(bestEdgesToRemove), bestQuality);
+            G<T> finalGraph = g.withFewerEdgesMap(bestEdgesToRemove).subGraph(cycle.vertices());
             BreakCycles.EdgeRemoval<T> info = new BreakCycles.EdgeRemoval<>(bestEdgesToRemove);
             return new BreakCycles.Action<T>() {
                 @Override
@@ -72,4 +113,32 @@ public class GreedyEdgeRemoval<T> implements BreakCycles.ActionComputer<T> {
         LOGGER.info("No edge found that improves quality; keeping cycle of size {}", cycle.size());
         return null; // must be a group, we cannot break the cycle
     }
+
+    private Map<V<T>, Map<V<T>, Long>> batch(List<Candidate<T>> candidates, int bestQuality) {
+        int cutOff = cutOff(bestQuality);
+        List<Candidate<T>> sorted = candidates.stream()
+                .filter(candidate -> candidate.quality <= cutOff)
+                .sorted(Comparator.comparingInt(Candidate<T>::quality).thenComparingInt(Candidate::position))
+                .toList();
+        Set<V<T>> used = new HashSet<>();
+        Map<V<T>, Map<V<T>, Long>> result = new LinkedHashMap<>();
+        int chosen = 0;
+        for (Candidate<T> candidate : sorted) {
+            if (chosen == batchSize) break;
+            Set<V<T>> vertices = new HashSet<>();
+            candidate.edgesToRemove.forEach((from, map) -> {
+                vertices.add(from);
+                vertices.addAll(map.keySet());
+            });
+            if (Collections.disjoint(used, vertices)) {
+                used.addAll(vertices);
+                candidate.edgesToRemove.forEach((from, map) ->
+                        result.computeIfAbsent(from, v -> new LinkedHashMap<>()).putAll(map));
+                chosen++;
+            }
+        }
+        LOGGER.debug("Batch of {} candidates, out of {} within {} of the best quality", chosen, sorted.size(),
+                tolerance);
+        return result;
+    }
 }
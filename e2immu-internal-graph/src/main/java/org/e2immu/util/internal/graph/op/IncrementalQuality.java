@@ -0,0 +1,271 @@
+package org.e2immu.util.internal.graph.op;
+
+import org.e2immu.util.internal.graph.Csr;
+import org.e2immu.util.internal.graph.G;
+import org.e2immu.util.internal.graph.V;
+
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/*
+Computes Linearize.quality(g.withFewerEdgesMap(edgesToRemove), upperBound) for many candidate sets of edges,
+without creating those graphs. The strongly connected components of g are computed once. For each candidate,
+only the components that contain a removed edge are examined: the others cannot change.
+
+A component stays strongly connected when, for every removed edge u->w inside it, w can still be reached from u.
+That is checked first, with a search from u that stops as soon as the targets have been found.
+Only the components that fail this test are decomposed again. In components with many edges per vertex, the test
+runs on a BitMatrix, built once, which expands a vertex 64 targets at a time.
+
+Components of size > 1 always belong to the cluster, so their sizes are a lower bound for the quality.
+That bound usually suffices to reject a candidate; only when it does not, the reachability between the cycles is
+recomputed, in one pass over the graph.
+
+Instances are thread-safe: all state per candidate is local to the quality method.
+ */
+public class IncrementalQuality<T> {
+    private final Csr<T> c;
+    private final Csr<T> in;
+    // position in c of the edge at position e in 'in'
+    private final int[] inToOut;
+    private final StronglyConnectedComponents scc;
+    private final int[] componentSize;
+    // the vertices of component k are members[memberStart[k]..memberStart[k+1])
+    private final int[] memberStart;
+    private final int[] members;
+    // position of each vertex in its component's part of 'members'
+    private final int[] localIndex;
+    // per component, its adjacency matrix when it is dense enough, or null
+    private final BitMatrix[] dense;
+    // total size of the components of size > 1
+    private final int onCycles;
+    // quality of g itself
+    private final int quality;
+
+    public IncrementalQuality(G<T> g) {
+        c = g.csr();
+        in = c.transposed();
+        int n = c.vertexCount();
+        // same traversal as in Csr.transposed(), which fills each row in increasing order of the source
+        inToOut = new int[c.edgeCount()];
+        int[] next = new int[n];
+        for (int i = 0; i < n; i++) next[i] = in.start(i);
+        for (int i = 0; i < n; i++) {
+            for (int e = c.start(i); e < c.end(i); e++) {
+                inToOut[next[c.target(e)]++] = e;
+            }
+        }
+        scc = StronglyConnectedComponents.of(c);
+        int count = scc.count();
+        componentSize = new int[count];
+        for (int i = 0; i < n; i++) componentSize[scc.component(i)]++;
+        memberStart = new int[count + 1];
+        for (int k = 0; k < count; k++) memberStart[k + 1] = memberStart[k] + componentSize[k];
+        int[] pos = Arrays.copyOf(memberStart, count);
+        members = new int[n];
+        for (int i = 0; i < n; i++) members[pos[scc.component(i)]++] = i;
+        localIndex = new int[n];
+        for (int k = 0; k < count; k++) {
+            for (int m = memberStart[k]; m < memberStart[k + 1]; m++) localIndex[members[m]] = m - memberStart[k];
+        }
+        dense = denseComponents(count);
+        int sum = 0;
+        for (int size : componentSize) if (size > 1) sum += size;
+        onCycles = sum;
+        quality = StronglyConnectedComponents.clusterSize(c, Integer.MAX_VALUE);
+    }
+
+    /*
+    Same contract as Linearize.quality: exact when below upperBound, otherwise some value >= upperBound.
+     */
+    public int quality(Map<V<T>, Map<V<T>, Long>> edgesToRemove, int upperBound) {
+        int n = c.vertexCount();
+        BitSet removed = new BitSet(c.edgeCount());
+        boolean[] affected = new boolean[scc.count()];
+        List<Integer> affectedList = new ArrayList<>();
+        boolean betweenComponents = false;
+        List<Integer> sources = new ArrayList<>(edgesToRemove.size());
+        for (Map.Entry<V<T>, Map<V<T>, Long>> entry : edgesToRemove.entrySet()) {
+            int from = c.indexOf(entry.getKey());
+            if (from < 0) continue;
+            sources.add(from);
+            for (V<T> toV : entry.getValue().keySet()) {
+                int to = c.indexOf(toV);
+                for (int e = c.start(from); e < c.end(from); e++) {
+                    if (c.target(e) == to) {
+                        removed.set(e);
+                        int k = scc.component(from);
+                        if (k != scc.component(to)) {
+                            betweenComponents = true;
+                        } else if (!affected[k]) {
+                            affected[k] = true;
+                            affectedList.add(k);
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+        if (removed.isEmpty()) return quality;
+
+        affectedList.removeIf(k -> {
+            if (staysStronglyConnected(k, sources, removed)) {
+                affected[k] = false;
+                return true;
+            }
+            return false;
+        });
+        if (affectedList.isEmpty() && !betweenComponents) return quality;
+
+        int lowerBound = onCycles;
+        for (int k : affectedList) {
+            if (componentSize[k] > 1) lowerBound -= componentSize[k];
+        }
+        if (lowerBound >= upperBound) return lowerBound;
+
+        // decompose the affected components again, without the removed edges
+        int[] rindex = new int[n];
+        BitSet onCycleInAffected = new BitSet(n);
+        int[] bound = {lowerBound};
+        for (int k : affectedList) {
+            int[] vertices = Arrays.copyOfRange(members, memberStart[k], memberStart[k + 1]);
+            IntPredicate accept = e -> !removed.get(e) && scc.component(c.target(e)) == k;
+            int count = StronglyConnectedComponents.run(c, vertices, accept, rindex, size -> {
+                if (size > 1) bound[0] += size;
+                return bound[0] < upperBound;
+            });
+            if (count < 0) return bound[0];
+            int[] subSize = new int[count];
+            for (int v : vertices) subSize[n - 1 - rindex[v]]++;
+            for (int v : vertices) {
+                if (subSize[n - 1 - rindex[v]] > 1) onCycleInAffected.set(v);
+            }
+        }
+
+        // the cluster: vertices reachable from a cycle, which also reach a cycle
+        int[] queue = new int[n];
+        int tail = 0;
+        BitSet fromCycle = new BitSet(n);
+        for (int i = 0; i < n; i++) {
+            int k = scc.component(i);
+            if (affected[k] ? onCycleInAffected.get(i) : componentSize[k] > 1) {
+                fromCycle.set(i);
+                queue[tail++] = i;
+            }
+        }
+        int seeds = tail;
+        BitSet reachesCycle = new BitSet(n);
+        for (int s = 0; s < seeds; s++) reachesCycle.set(queue[s]);
+        int[] queue2 = Arrays.copyOf(queue, n);
+        for (int head = 0; head < tail; head++) {
+            int i = queue[head];
+            for (int e = c.start(i); e < c.end(i); e++) {
+                int to = c.target(e);
+                if (!removed.get(e) && !fromCycle.get(to)) {
+                    fromCycle.set(to);
+                    queue[tail++] = to;
+                }
+            }
+        }
+        tail = seeds;
+        for (int head = 0; head < tail; head++) {
+            int i = queue2[head];
+            for (int e = in.start(i); e < in.end(i); e++) {
+                int from = in.target(e);
+                if (!removed.get(inToOut[e]) && !reachesCycle.get(from)) {
+                    reachesCycle.set(from);
+                    queue2[tail++] = from;
+                }
+            }
+        }
+        fromCycle.and(reachesCycle);
+        return fromCycle.cardinality();
+    }
+
+    private BitMatrix[] denseComponents(int count) {
+        long[] internalEdges = new long[count];
+        for (int i = 0; i < c.vertexCount(); i++) {
+            int k = scc.component(i);
+            for (int e = c.start(i); e < c.end(i); e++) {
+                if (scc.component(c.target(e)) == k) internalEdges[k]++;
+            }
+        }
+        BitMatrix[] result = new BitMatrix[count];
+        for (int k = 0; k < count; k++) {
+            if (!BitMatrix.isWorthIt(componentSize[k], internalEdges[k])) continue;
+            BitMatrix matrix = new BitMatrix(componentSize[k]);
+            for (int m = memberStart[k]; m < memberStart[k + 1]; m++) {
+                int i = members[m];
+                for (int e = c.start(i); e < c.end(i); e++) {
+                    int to = c.target(e);
+                    if (scc.component(to) == k) matrix.set(localIndex[i], localIndex[to]);
+                }
+            }
+            result[k] = matrix;
+        }
+        return result;
+    }
+
+    // for testing
+    int denseComponentCount() {
+        return (int) Arrays.stream(dense).filter(Objects::nonNull).count();
+    }
+
+    private boolean staysStronglyConnected(int k, List<Integer> sources, BitSet removed) {
+        if (dense[k] != null) return staysStronglyConnected(k, dense[k], sources, removed);
+        int n = c.vertexCount();
+        int[] queue = new int[n];
+        BitSet visited = new BitSet(n);
+        BitSet targets = new BitSet(n);
+        for (int u : sources) {
+            if (scc.component(u) != k) continue;
+            targets.clear();
+            for (int e = c.start(u); e < c.end(u); e++) {
+                int w = c.target(e);
+                if (removed.get(e) && w != u && scc.component(w) == k) targets.set(w);
+            }
+            if (targets.isEmpty()) continue;
+            int remaining = targets.cardinality();
+            visited.clear();
+            visited.set(u);
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = u;
+            while (head < tail && remaining > 0) {
+                int i = queue[head++];
+                for (int e = c.start(i); e < c.end(i); e++) {
+                    int to = c.target(e);
+                    if (!removed.get(e) && !visited.get(to) && scc.component(to) == k) {
+                        visited.set(to);
+                        queue[tail++] = to;
+                        if (targets.get(to)) remaining--;
+                    }
+                }
+            }
+            if (remaining > 0) return false;
+        }
+        return true;
+    }
+
+    private boolean staysStronglyConnected(int k, BitMatrix matrix, List<Integer> sources, BitSet removed) {
+        // the rows of the sources, without the removed edges; and the targets of those edges
+        Map<Integer, long[]> replacedRows = new HashMap<>();
+        Map<Integer, long[]> targets = new HashMap<>();
+        for (int u : sources) {
+            if (scc.component(u) != k) continue;
+            for (int e = c.start(u); e < c.end(u); e++) {
+                int w = c.target(e);
+                if (removed.get(e) && w != u && scc.component(w) == k) {
+                    int lu = localIndex[u];
+                    int lw = localIndex[w];
+                    replacedRows.computeIfAbsent(lu, matrix::row)[lw >>> 6] &= ~(1L << lw);
+                    targets.computeIfAbsent(lu, x -> new long[matrix.words()])[lw >>> 6] |= 1L << lw;
+                }
+            }
+        }
+        for (Map.Entry<Integer, long[]> entry : targets.entrySet()) {
+            if (!matrix.reachesAll(entry.getKey(), entry.getValue(), replacedRows)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,116 @@
+package org.e2immu.util.internal.graph.op;
+
+import org.e2immu.util.internal.graph.Csr;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/*
+The levels of the linear part of a graph, one by one, in the vertex indices of the CSR arrays.
+Every vertex keeps a counter of its outgoing edges to vertices that have not been placed yet (self-loops do not
+count). A vertex whose counter reaches 0 joins the next level. Each level is sorted, so that it follows the order
+of G.vertices(). The iteration ends when no vertex is ready; the vertices that have not been returned then lie on,
+or lead to, a cycle.
+
+In parallel mode, the counters are atomic, and levels of at least PARALLEL_THRESHOLD vertices (or the threshold
+given to the constructor) are processed concurrently in the common ForkJoin pool. Because each level is sorted, the output does not depend on the mode.
+ */
+class KahnLevels implements Iterator<int[]> {
+    static final int PARALLEL_THRESHOLD = 1024;
+
+    private final Csr<?> c;
+    private final Csr<?> in;
+    private final boolean parallel;
+    private final int parallelThreshold;
+    private final int[] counter;
+    private final AtomicIntegerArray atomicCounter;
+    // collects the next level
+    private final int[] scratch;
+    private int[] level;
+    private int placed;
+
+    KahnLevels(Csr<?> c, boolean parallel) {
+        this(c, parallel, PARALLEL_THRESHOLD);
+    }
+
+    KahnLevels(Csr<?> c, boolean parallel, int parallelThreshold) {
+        this.c = c;
+        this.in = c.transposed();
+        this.parallel = parallel;
+        this.parallelThreshold = parallelThreshold;
+        int n = c.vertexCount();
+        int[] counts = new int[n];
+        IntStream range = IntStream.range(0, n);
+        (parallel && n >= parallelThreshold ? range.parallel() : range).forEach(i -> {
+            int count = 0;
+            for (int e = c.start(i); e < c.end(i); e++) {
+                if (c.target(e) != i) count++;
+            }
+            counts[i] = count;
+        });
+        int[] first = new int[n];
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            if (counts[i] == 0) first[size++] = i;
+        }
+        this.level = Arrays.copyOf(first, size);
+        this.scratch = first;
+        this.counter = parallel ? null : counts;
+        this.atomicCounter = parallel ? new AtomicIntegerArray(counts) : null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return level.length > 0;
+    }
+
+    @Override
+    public int[] next() {
+        if (level.length == 0) throw new NoSuchElementException();
+        int[] result = level;
+        placed += result.length;
+        level = parallel ? parallelNextLevel(result) : nextLevel(result);
+        return result;
+    }
+
+    // the number of vertices returned so far
+    int placed() {
+        return placed;
+    }
+
+    private int[] nextLevel(int[] current) {
+        int[] next = scratch;
+        int size = 0;
+        for (int i : current) {
+            for (int e = in.start(i); e < in.end(i); e++) {
+                int from = in.target(e);
+                if (from != i && --counter[from] == 0) next[size++] = from;
+            }
+        }
+        Arrays.sort(next, 0, size);
+        return Arrays.copyOf(next, size);
+    }
+
+    private int[] parallelNextLevel(int[] current) {
+        int[] next = scratch;
+        AtomicInteger size = new AtomicInteger();
+        IntStream range = IntStream.of(current);
+        (current.length >= parallelThreshold ? range.parallel() : range).forEach(i -> {
+            for (int e = in.start(i); e < in.end(i); e++) {
+                int from = in.target(e);
+                if (from != i && atomicCounter.decrementAndGet(from) == 0) next[size.getAndIncrement()] = from;
+            }
+        });
+        int[] result = Arrays.copyOf(next, size.get());
+        if (result.length >= parallelThreshold) {
+            Arrays.parallelSort(result);
+        } else {
+            Arrays.sort(result);
+        }
+        return result;
+    }
+}
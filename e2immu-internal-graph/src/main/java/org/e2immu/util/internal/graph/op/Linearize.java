@@ -1,11 +1,17 @@
 package org.e2immu.util.internal.graph.op;
 
+import org.e2immu.util.internal.graph.Csr;
 import org.e2immu.util.internal.graph.G;
 import org.e2immu.util.internal.graph.V;
 
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.function.BiFunction;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 public class Linearize {
@@ -47,7 +53,24 @@ public class Linearize {
     }
 
     public static <T> int qualityBasedOnTotalCluster(G<T> g) {
-        return linearize(g, LinearizationMode.ONLY_REVERSE_GRAPH).quality();
+        return quality(g, Integer.MAX_VALUE);
+    }
+
+    /*
+    Same value as qualityBasedOnTotalCluster, i.e., linearize(g, ONLY_REVERSE_GRAPH).quality(), when it is below
+    upperBound. Otherwise, the result is some value >= upperBound: the computation stops as soon as that is certain.
+    This is what a search for the best candidate needs: most candidates are no better than the best one so far.
+     */
+    public static <T> int quality(G<T> g, int upperBound) {
+        return StronglyConnectedComponents.clusterSize(g.csr(), upperBound);
+    }
+
+    /*
+    Where linearize stops at the vertices on or towards a cycle, the condensation places every vertex: each
+    strongly connected component is one node of a directed acyclic graph, with its own level.
+     */
+    public static <T> Condensation<T> condensation(G<T> g) {
+        return Condensation.of(g);
     }
 
     public static <T> Result<T> linearize(G<T> g) {
@@ -59,54 +82,214 @@ public class Linearize {
     }
 
     public static <T> Result<T> linearize(G<T> g, LinearizationMode mode) {
-        Set<V<T>> toDo = new LinkedHashSet<>(g.vertices());
-        Set<V<T>> done = new LinkedHashSet<>();
+        return linearize(g, mode, false);
+    }
+
+    /*
+    The linear part is computed in O(V+E), Kahn-style, see KahnLevels.
+    When 'parallel' is true, large levels are computed concurrently; the result is identical to the sequential one.
+     */
+    public static <T> Result<T> linearize(G<T> g, LinearizationMode mode, boolean parallel) {
+        Csr<T> c = g.csr();
+        int n = c.vertexCount();
+        BitSet done = new BitSet(n);
         List<Set<V<T>>> linearResult = new ArrayList<>();
+        KahnLevels levels = new KahnLevels(c, parallel);
+        while (levels.hasNext()) {
+            Set<V<T>> localLinear = new LinkedHashSet<>();
+            for (int i : levels.next()) {
+                localLinear.add(c.vertex(i));
+                done.set(i);
+            }
+            linearResult.add(localLinear);
+        }
+
+        Remainder<T> remainder = remainder(g, c, done, levels.placed(), mode);
+        return new Result<>(new Hierarchy<>(linearResult), remainder.attachedToCycles,
+                new Cycles<>(remainder.cycles));
+    }
+
+    private record Remainder<T>(Hierarchy<T> attachedToCycles, Set<Cycle<T>> cycles) {
+    }
+
+    // the vertices that are not 'done' lie on, or lead to, a cycle
+    private static <T> Remainder<T> remainder(G<T> g, Csr<T> c, BitSet done, int placed, LinearizationMode mode) {
+        int n = c.vertexCount();
         Set<Cycle<T>> cycleSet = new LinkedHashSet<>();
         Hierarchy<T> attachedToCycles = new Hierarchy<>(new ArrayList<>());
-        while (!toDo.isEmpty()) {
-            Set<V<T>> localLinear = new LinkedHashSet<>();
-            for (V<T> v : toDo) {
-                Map<V<T>, Long> edgeMap = g.edges(v);
-                Set<V<T>> edges = edgeMap == null ? null : edgeMap.keySet();
-                boolean safe;
-                if (edges == null || edges.isEmpty()) {
-                    safe = true;
-                } else {
-                    Set<V<T>> copy = new LinkedHashSet<>(edges);
-                    copy.removeAll(done);
-                    copy.remove(v);
-                    safe = copy.isEmpty();
+        if (placed < n && mode != LinearizationMode.ONLY_LINEAR) {
+            Set<V<T>> toDo = new LinkedHashSet<>();
+            for (int i = done.nextClearBit(0); i < n; i = done.nextClearBit(i + 1)) {
+                toDo.add(c.vertex(i));
+            }
+            // the remaining vertices form one or more cycles; but they can still be pruned a bit
+            attachedToCycles.append(removeAsManyAsPossible(g, toDo));
+            attachedToCycles.list().stream().flatMap(Set::stream).forEach(toDo::remove);
+            // find the connected cycles in the remaining vertices
+            if (mode == LinearizationMode.ONLY_REVERSE_GRAPH) {
+                cycleSet.add(new Cycle<>(toDo));
+            } else {
+                G<T> subGraph = g.subGraph(toDo);
+                cycleSet.addAll(findConnectedSubSets(subGraph, toDo));
+            }
+        }
+        return new Remainder<>(attachedToCycles, cycleSet);
+    }
+
+    public enum PartType {
+        LINEAR, ATTACHED, CYCLE
+    }
+
+    /*
+    One piece of a Result: a level of 'linearized' or of 'attachedToCycles', or one of the remaining cycles.
+    'index' is the position of the piece in its part of the Result.
+     */
+    public record Part<T>(PartType type, int index, Set<V<T>> vertices) {
+    }
+
+    /*
+    The same content as linearize(g, mode, parallel), piece by piece, as soon as each piece is final:
+    first the levels of the linear part, starting with the leaves; then the levels of the vertices attached to
+    cycles, and finally the cycles. The linear levels are computed one at a time, when the consumer asks for them.
+     */
+    public static <T> Iterator<Part<T>> parts(G<T> g, LinearizationMode mode, boolean parallel) {
+        return new PartIterator<>(g, mode, parallel);
+    }
+
+    /*
+    Publishes the parts of the linearization of g, computed on the executor, to each subscriber.
+    Every subscriber triggers its own computation. Parts are only computed when the subscriber has requested them,
+    and no task ever waits for demand: the publisher cannot deadlock, not even on a single-threaded executor.
+     */
+    public static <T> Flow.Publisher<Part<T>> publisher(G<T> g, LinearizationMode mode, boolean parallel,
+                                                       Executor executor) {
+        return subscriber -> subscriber.onSubscribe(new PartSubscription<>(subscriber, executor,
+                () -> parts(g, mode, parallel)));
+    }
+
+    /*
+    Emits at most as many parts as requested, in tasks on the executor. A task runs until the demand is met;
+    'wip' counts the requests that arrived in the meantime, so that there is never more than one task at a time.
+     */
+    private static class PartSubscription<T> implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super Part<T>> subscriber;
+        private final Executor executor;
+        private final Supplier<Iterator<Part<T>>> iteratorSupplier;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile IllegalArgumentException badRequest;
+        // only accessed in run(), which never runs concurrently with itself
+        private Iterator<Part<T>> iterator;
+        private boolean done;
+
+        PartSubscription(Flow.Subscriber<? super Part<T>> subscriber, Executor executor,
+                         Supplier<Iterator<Part<T>>> iteratorSupplier) {
+            this.subscriber = subscriber;
+            this.executor = executor;
+            this.iteratorSupplier = iteratorSupplier;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                badRequest = new IllegalArgumentException("Non-positive request " + n);
+            } else {
+                demand.getAndAccumulate(n, (d, m) -> d + m < 0 ? Long.MAX_VALUE : d + m);
+            }
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                emit();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit() {
+            if (done) return;
+            try {
+                if (badRequest != null) {
+                    done = true;
+                    subscriber.onError(badRequest);
+                    return;
                 }
-                if (safe) {
-                    localLinear.add(v);
+                if (iterator == null) iterator = iteratorSupplier.get();
+                while (!cancelled) {
+                    if (!iterator.hasNext()) {
+                        done = true;
+                        subscriber.onComplete();
+                        return;
+                    }
+                    long d = demand.get();
+                    if (d == 0) return;
+                    subscriber.onNext(iterator.next());
+                    if (d != Long.MAX_VALUE) demand.decrementAndGet();
                 }
+            } catch (RuntimeException | Error e) {
+                done = true;
+                subscriber.onError(e);
             }
-            if (localLinear.isEmpty()) {
-                if (mode == LinearizationMode.ONLY_REVERSE_GRAPH || mode == LinearizationMode.ALL) {
-                    // the remaining vertices form one or more cycles; but they can still be pruned a bit
-                    attachedToCycles.append(removeAsManyAsPossible(g, toDo));
-                    attachedToCycles.list().stream().flatMap(Set::stream).forEach(t -> {
-                        toDo.remove(t);
-                        done.add(t);
-                    });
-                    // find the connected cycles in the remaining vertices
-                    if (mode == LinearizationMode.ONLY_REVERSE_GRAPH) {
-                        cycleSet.add(new Cycle<>(toDo));
-                    } else {
-                        G<T> subGraph = g.subGraph(toDo);
-                        cycleSet.addAll(findConnectedSubSets(subGraph, toDo));
-                    }
+        }
+    }
+
+    private static class PartIterator<T> implements Iterator<Part<T>> {
+        private final G<T> g;
+        private final LinearizationMode mode;
+        private final Csr<T> c;
+        private final KahnLevels levels;
+        private final BitSet done;
+        private int linearIndex;
+        private Iterator<Part<T>> remainder;
+
+        PartIterator(G<T> g, LinearizationMode mode, boolean parallel) {
+            this.g = g;
+            this.mode = mode;
+            this.c = g.csr();
+            this.levels = new KahnLevels(c, parallel);
+            this.done = new BitSet(c.vertexCount());
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (levels.hasNext()) return true;
+            if (remainder == null) {
+                Remainder<T> r = remainder(g, c, done, levels.placed(), mode);
+                List<Part<T>> list = new ArrayList<>();
+                int i = 0;
+                for (Set<V<T>> set : r.attachedToCycles.list()) {
+                    list.add(new Part<>(PartType.ATTACHED, i++, set));
                 }
-                break;
-            } else {
-                done.addAll(localLinear);
-                localLinear.forEach(toDo::remove);
-                linearResult.add(localLinear);
+                i = 0;
+                for (Cycle<T> cycle : r.cycles) {
+                    list.add(new Part<>(PartType.CYCLE, i++, cycle.vertices()));
+                }
+                remainder = list.iterator();
+            }
+            return remainder.hasNext();
+        }
+
+        @Override
+        public Part<T> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            if (remainder != null) return remainder.next();
+            Set<V<T>> set = new LinkedHashSet<>();
+            for (int i : levels.next()) {
+                set.add(c.vertex(i));
+                done.set(i);
             }
+            return new Part<>(PartType.LINEAR, linearIndex++, set);
         }
-        Cycles<T> cycles = new Cycles<>(cycleSet);
-        return new Result<>(new Hierarchy<>(linearResult), attachedToCycles, cycles);
     }
 
     private static <T> Hierarchy<T> removeAsManyAsPossible(G<T> g, Set<V<T>> toDo) {
@@ -115,43 +298,90 @@ public class Linearize {
         return r.linearized.reversed();
     }
 
-    public static <T> List<Cycle<T>> findConnectedSubSets(G<T> g, Set<V<T>> startingPoints) {
-        List<Cycle<T>> result = new ArrayList<>();
-        Set<V<T>> toDo = new LinkedHashSet<>(startingPoints);
-        while (!toDo.isEmpty()) {
-            V<T> v = toDo.stream().findFirst().orElseThrow();
-            Set<V<T>> connected = Common.follow(g, v);
-            toDo.removeAll(connected);
-            result.add(new Cycle<>(connected));
-            tryToMergeResultSets(result);
-        }
-        return result;
-    }
+    /*
+    Splits the vertices reachable from the starting points into groups without edges between them:
+    BreakCycles handles each group on its own, and merges their linearizations level by level.
+    Strongly connected components would be too fine for that; see StronglyConnectedComponents.
 
-    private static <T> void tryToMergeResultSets(List<Cycle<T>> result) {
-        boolean changed = true;
-        while (changed) {
-            changed = false;
-            Integer mergeI = null;
-            Integer mergeJ = null;
-            for (int i = 0; i < result.size() - 1; i++) {
-                Cycle<T> c1 = result.get(i);
-                for (int j = i + 1; j < result.size(); j++) {
-                    Cycle<T> c2 = result.get(j);
-                    if (!Collections.disjoint(c1.vertices(), c2.vertices())) {
-                        mergeI = i;
-                        mergeJ = j;
-                        break;
+    One pass, in O(V+E) up to the inverse Ackermann factor of union-find. Each unvisited starting point is followed
+    breadth-first, without entering vertices that have been visited before; an edge to such a vertex joins the two
+    groups. A group lists its vertices in the order in which they were visited, and the groups are ordered by their
+    first vertex. When no search joins more than one earlier group, this is exactly the result of following each
+    starting point, and appending the new vertices to the group it overlaps with.
+     */
+    public static <T> List<Cycle<T>> findConnectedSubSets(G<T> g, Set<V<T>> startingPoints) {
+        Csr<T> c = g.csr();
+        int n = c.vertexCount();
+        // the search that visited a vertex, or -1; searches are numbered from 0, and joined with union-find
+        int[] searchOf = new int[n];
+        Arrays.fill(searchOf, -1);
+        int[] parent = new int[n];
+        int[] rank = new int[n];
+        int searches = 0;
+        // all visited vertices, in the order of visiting; each search is a contiguous, breadth-first, part
+        int[] visited = new int[n];
+        int tail = 0;
+        for (V<T> v : startingPoints) {
+            int start = c.indexOf(v);
+            if (start < 0 || searchOf[start] >= 0) continue;
+            int search = searches++;
+            parent[search] = search;
+            int head = tail;
+            visited[tail++] = start;
+            searchOf[start] = search;
+            while (head < tail) {
+                int i = visited[head++];
+                for (int e = c.start(i); e < c.end(i); e++) {
+                    int to = c.target(e);
+                    int other = searchOf[to];
+                    if (other < 0) {
+                        searchOf[to] = search;
+                        visited[tail++] = to;
+                    } else if (other != search) {
+                        union(parent, rank, search, other);
                     }
                 }
-                if (mergeI != null) break;
             }
-            if (mergeI != null) {
-                changed = true;
-                result.get(mergeI).vertices().addAll(result.get(mergeJ).vertices());
-                result.remove((int) mergeJ);
+        }
+        // per root search, the index of its group in the result
+        int[] groupOf = new int[searches];
+        Arrays.fill(groupOf, -1);
+        List<Set<V<T>>> groups = new ArrayList<>();
+        for (int k = 0; k < tail; k++) {
+            int root = find(parent, searchOf[visited[k]]);
+            if (groupOf[root] < 0) {
+                groupOf[root] = groups.size();
+                groups.add(new LinkedHashSet<>());
             }
+            groups.get(groupOf[root]).add(c.vertex(visited[k]));
+        }
+        List<Cycle<T>> result = new ArrayList<>(groups.size());
+        for (Set<V<T>> group : groups) {
+            result.add(new Cycle<>(group));
         }
+        return result;
     }
 
+    private static int find(int[] parent, int i) {
+        int root = i;
+        while (parent[root] != root) root = parent[root];
+        while (parent[i] != root) {
+            int next = parent[i];
+            parent[i] = root;
+            i = next;
+        }
+        return root;
+    }
+
+    private static void union(int[] parent, int[] rank, int i, int j) {
+        int ri = find(parent, i);
+        int rj = find(parent, j);
+        if (ri == rj) return;
+        if (rank[ri] < rank[rj]) {
+            parent[ri] = rj;
+        } else {
+            parent[rj] = ri;
+            if (rank[ri] == rank[rj]) rank[ri]++;
+        }
+    }
 }
@@ -9,114 +9,154 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 public class ParallelGreedyEdgeRemoval<T> implements BreakCycles.ActionComputer<T> {
     private static final Logger LOGGER = LoggerFactory.getLogger(ParallelGreedyEdgeRemoval.class);
 
-    public interface EdgeBlockStreamGenerator<T> {
-        Stream<List<Map<V<T>, Map<V<T>, Long>>>> stream();
-
-        int edgeCount();
-    }
-
-    public static class StoppableEdgeBlockStreamGenerator<T> implements EdgeBlockStreamGenerator<T> {
-        private final List<Map<V<T>, Map<V<T>, Long>>> edges;
-        private final int blockSize;
-        private final int edgeCount;
-        private final int blocks;
-
-        public StoppableEdgeBlockStreamGenerator(G<T> g, EdgeIterator<T> edgeIterator, int blockSize) {
-            Iterator<Map<V<T>, Map<V<T>, Long>>> iterator = edgeIterator.iterator(g);
-            edges = StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false).toList();
-            edgeCount = edges.size();
-            this.blockSize = blockSize;
-            this.blocks = edges.size() / blockSize;
-            LOGGER.info("Have {} edges, block size {}, expect {} blocks", edgeCount, blockSize, blocks);
-        }
-
-        @Override
-        public Stream<List<Map<V<T>, Map<V<T>, Long>>>> stream() {
-            Iterator<List<Map<V<T>, Map<V<T>, Long>>>> iterator = new MyIterator();
-
-            return StreamSupport.stream(Spliterators.spliterator(iterator, blocks, Spliterator.CONCURRENT), true);
-        }
-
-        @Override
-        public int edgeCount() {
-            return edgeCount;
-        }
-
-        class MyIterator implements Iterator<List<Map<V<T>, Map<V<T>, Long>>>> {
-            int pos;
-
-            @Override
-            public boolean hasNext() {
-                return pos < edgeCount;
-            }
-
-            @Override
-            public List<Map<V<T>, Map<V<T>, Long>>> next() {
-                List<Map<V<T>, Map<V<T>, Long>>> list = edges.subList(pos, Math.min(pos + blockSize, edges.size()));
-                pos += blockSize;
-                return list;
-            }
-        }
-    }
+    // each worker aims for blocks that take this long, so that claiming a block costs next to nothing
+    static final long TARGET_BLOCK_NANOS = 2_000_000L;
+    static final int MAX_BLOCK_SIZE = 4096;
 
     private final EdgePrinter<T> edgePrinter;
     private final EdgeIterator<T> edgeIterator;
     private final TimedLogger timedLogger;
+    private final int goodEnough;
+    private final Executor executor;
+    private final int parallelism;
 
     public ParallelGreedyEdgeRemoval(EdgePrinter<T> edgePrinter, EdgeIterator<T> iterator, TimedLogger timedLogger) {
+        this(edgePrinter, iterator, timedLogger, 0);
+    }
+
+    /*
+    The search stops at the first candidate, in the order of the edge iterator, whose quality is at most
+    'goodEnough'. With the default, 0, that is a candidate which breaks all cycles, and which cannot be beaten.
+     */
+    public ParallelGreedyEdgeRemoval(EdgePrinter<T> edgePrinter, EdgeIterator<T> iterator, TimedLogger timedLogger,
+                                     int goodEnough) {
+        this(edgePrinter, iterator, timedLogger, goodEnough, ForkJoinPool.commonPool(),
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /*
+    The candidates are evaluated by 'parallelism' workers: the calling thread, and parallelism - 1 tasks submitted
+    to the executor, e.g., a dedicated ForkJoinPool, or one that starts a virtual thread per task.
+    The workers take blocks of consecutive candidates from a shared queue; each worker sizes its blocks from the
+    time it measured per candidate, aiming for TARGET_BLOCK_NANOS per block.
+     */
+    public ParallelGreedyEdgeRemoval(EdgePrinter<T> edgePrinter, EdgeIterator<T> iterator, TimedLogger timedLogger,
+                                     int goodEnough, Executor executor, int parallelism) {
+        assert parallelism >= 1;
         this.edgePrinter = edgePrinter;
         this.edgeIterator = iterator;
         this.timedLogger = timedLogger;
+        this.goodEnough = goodEnough;
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    private record Best<T>(int quality, int position, Map<V<T>, Map<V<T>, Long>> edgesToRemove) {
+    }
+
+    /*
+    State shared by the workers. 'quality' is the best exact quality found so far: a candidate is only evaluated
+    up to that value + 1, which is enough to recognize an equal one, so that ties can be broken by position.
+    'firstGoodEnough' is the position of the first candidate known to be good enough; candidates after it are skipped.
+     */
+    private static class Shared<T> {
+        final List<Map<V<T>, Map<V<T>, Long>>> candidates;
+        // the work queue: the position of the first candidate that has not been claimed yet
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger quality = new AtomicInteger(Integer.MAX_VALUE);
+        final AtomicInteger firstGoodEnough = new AtomicInteger(Integer.MAX_VALUE);
+        final AtomicInteger evaluated = new AtomicInteger();
+        final Queue<Best<T>> bests = new ConcurrentLinkedQueue<>();
+
+        Shared(List<Map<V<T>, Map<V<T>, Long>>> candidates) {
+            this.candidates = candidates;
+        }
     }
 
-    private record Best<T>(G<T> subGraph, int quality, Map<V<T>, Map<V<T>, Long>> edgesToRemove) {
+    private void work(IncrementalQuality<T> incrementalQuality, Shared<T> shared) {
+        int size = shared.candidates.size();
+        int blockSize = 1;
+        while (true) {
+            int start = shared.next.getAndAdd(blockSize);
+            if (start >= size || start > shared.firstGoodEnough.get()) return;
+            int end = Math.min(size, start + blockSize);
+            long t0 = System.nanoTime();
+            Best<T> best = compute(incrementalQuality, shared, start, end);
+            long nanosPerCandidate = Math.max(1L, (System.nanoTime() - t0) / (end - start));
+            if (best != null) shared.bests.add(best);
+            if (timedLogger != null) {
+                timedLogger.info("Count {}, best {}", shared.evaluated.get(), shared.quality.get());
+            }
+            blockSize = (int) Math.max(1L, Math.min(MAX_BLOCK_SIZE, TARGET_BLOCK_NANOS / nanosPerCandidate));
+        }
     }
 
-    private static <T> Best<T> compute(G<T> g, List<Map<V<T>, Map<V<T>, Long>>> block) {
+    /*
+    The best candidate of the block [start, end), as (quality, position). Values that are not exact are at least the shared
+    quality + 1 at the time, so such a candidate can never be the overall best.
+    Returns null when the block was skipped entirely.
+     */
+    private Best<T> compute(IncrementalQuality<T> incrementalQuality, Shared<T> shared, int start, int end) {
         int bestQuality = Integer.MAX_VALUE;
-        G<T> bestSubGraph = null;
+        int bestPosition = -1;
         Map<V<T>, Map<V<T>, Long>> bestEdgesToRemove = null;
-        for (Map<V<T>, Map<V<T>, Long>> edgesToRemove : block) {
-            G<T> withoutEdges = g.withFewerEdgesMap(edgesToRemove);
-            int quality = Linearize.qualityBasedOnTotalCluster(withoutEdges);
+        for (int position = start; position < end; position++) {
+            if (position > shared.firstGoodEnough.get()) break;
+            Map<V<T>, Map<V<T>, Long>> edgesToRemove = shared.candidates.get(position);
+            int global = shared.quality.get();
+            int bound = Math.max(goodEnough + 1, Math.min(bestQuality, global == Integer.MAX_VALUE
+                    ? Integer.MAX_VALUE : global + 1));
+            int quality = incrementalQuality.quality(edgesToRemove, bound);
+            shared.evaluated.incrementAndGet();
             if (quality < bestQuality) {
-                bestSubGraph = withoutEdges;
                 bestQuality = quality;
+                bestPosition = position;
                 bestEdgesToRemove = edgesToRemove;
             }
+            if (quality < bound) {
+                shared.quality.accumulateAndGet(quality, Math::min);
+            }
+            if (quality <= goodEnough) {
+                shared.firstGoodEnough.accumulateAndGet(position, Math::min);
+                break;
+            }
         }
-        assert bestSubGraph != null;
-        return new Best<>(bestSubGraph, bestQuality, bestEdgesToRemove);
+        return bestEdgesToRemove == null ? null : new Best<>(bestQuality, bestPosition, bestEdgesToRemove);
     }
 
     @Override
     public BreakCycles.Action<T> compute(G<T> inputGraph, Cycle<T> cycle) {
-        G<T> g = inputGraph.subGraph(cycle.vertices());
-        double cycleSize = cycle.size();
-        EdgeBlockStreamGenerator<T> generator = new StoppableEdgeBlockStreamGenerator<>(g, edgeIterator, 50);
-        AtomicInteger counter = new AtomicInteger();
-        AtomicInteger bestQuality = new AtomicInteger(Integer.MAX_VALUE);
-        Best<T> overallBest = generator.stream().map(block -> {
-            if (block.isEmpty()) {
-                return new Best<T>(null, Integer.MAX_VALUE, Map.of());
-            }
-            Best<T> best = compute(g, block);
-            if (best.quality < bestQuality.get()) {
-                bestQuality.set(best.quality);
-            }
-            int count = counter.addAndGet(block.size());
-            timedLogger.info("Count {}, best {}", count, bestQuality);
-            return best;
-        }).min(Comparator.comparing(Best::quality)).orElse(null);
+        G<T> g = inputGraph.subGraph(cycle.vertices()).materialize();
+        List<Map<V<T>, Map<V<T>, Long>>> candidates = new ArrayList<>();
+        edgeIterator.iterator(g).forEachRemaining(candidates::add);
+        IncrementalQuality<T> incrementalQuality = new IncrementalQuality<>(g);
+        Shared<T> shared = new Shared<>(candidates);
+        int workers = Math.min(parallelism, Math.max(1, candidates.size()));
+        List<CompletableFuture<Void>> futures = new ArrayList<>(workers - 1);
+        for (int i = 1; i < workers; i++) {
+            futures.add(CompletableFuture.runAsync(() -> work(incrementalQuality, shared), executor));
+        }
+        // the calling thread works too, so that the queue is emptied even when the executor is busy
+        work(incrementalQuality, shared);
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        Collection<Best<T>> bests = shared.bests;
+        // deterministic: the first good enough candidate, or else the best one, the first one in case of ties
+        int firstGoodEnough = shared.firstGoodEnough.get();
+        Best<T> overallBest = bests.stream()
+                .filter(b -> firstGoodEnough == Integer.MAX_VALUE || b.position == firstGoodEnough)
+                .min(Comparator.comparingInt(Best<T>::quality).thenComparingInt(Best::position))
+                .orElse(null);
+        LOGGER.debug("Evaluated {} of {} candidates", shared.evaluated.get(), candidates.size());
         if (overallBest != null) {
-            assert counter.get() == generator.edgeCount();
             LOGGER.info("Best choice for greedy edge removal is {}, quality now {}",
                     edgePrinter.print(overallBest.edgesToRemove), overallBest.quality);
             if (overallBest.quality < cycle.size()) {
@@ -124,7 +164,7 @@ public class ParallelGreedyEdgeRemoval<T> implements BreakCycles.ActionComputer<
                 return new BreakCycles.Action<>() {
                     @Override
                     public G<T> apply() {
-                        return overallBest.subGraph.subGraph(cycle.vertices());
+                        return g.withFewerEdgesMap(overallBest.edgesToRemove).subGraph(cycle.vertices());
                     }
 
                     @Override
@@ -0,0 +1,171 @@
+package org.e2immu.util.internal.graph.op;
+
+import org.e2immu.util.internal.graph.Csr;
+import org.e2immu.util.internal.graph.G;
+import org.e2immu.util.internal.graph.V;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/*
+Shrinks a graph before its cycles are broken, by rules that keep the cycles, and the paths between them, intact:
+
+1. self-loops are dropped: they do not count for Linearize's quality;
+2. vertices without incoming or without outgoing edges are removed, repeatedly: they cannot be on a cycle;
+3. a vertex x with exactly one incoming edge a->x and one outgoing edge x->b is contracted into a new edge a->b.
+   Removing that edge stands for removing whichever of a->x and x->b has the lowest weight, and it gets that weight.
+   Contraction is skipped when a == b, or when a->b already exists, because then the new edge would have to stand
+   for more than one path.
+
+The result is the kernel, and a record of which original edge each kernel edge stands for, so that a set of kernel
+edges can be expanded into edges of the original graph. The quality of a candidate is measured on the kernel, where
+contracted vertices do not count; this may steer the greedy search to a different, equally valid, choice.
+ */
+public class Reduction<T> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Reduction.class);
+
+    private final Csr<T> c;
+    private final G<T> kernel;
+    // per kernel vertex, its kernel edges, as target -> the position of the original edge in c
+    private final Map<V<T>, Map<V<T>, Integer>> origin;
+    private final int[] edgeSource;
+
+    private Reduction(Csr<T> c, G<T> kernel, Map<V<T>, Map<V<T>, Integer>> origin, int[] edgeSource) {
+        this.c = c;
+        this.kernel = kernel;
+        this.origin = origin;
+        this.edgeSource = edgeSource;
+    }
+
+    public static <T> Reduction<T> of(G<T> g) {
+        Csr<T> c = g.csr();
+        int n = c.vertexCount();
+        int[] edgeSource = new int[c.edgeCount()];
+        List<Map<Integer, Integer>> out = new ArrayList<>(n);
+        List<Set<Integer>> in = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            out.add(new LinkedHashMap<>());
+            in.add(new LinkedHashSet<>());
+        }
+        for (int i = 0; i < n; i++) {
+            for (int e = c.start(i); e < c.end(i); e++) {
+                edgeSource[e] = i;
+                int to = c.target(e);
+                if (to != i) {
+                    out.get(i).put(to, e);
+                    in.get(to).add(i);
+                }
+            }
+        }
+        boolean[] removed = new boolean[n];
+        Deque<Integer> queue = new ArrayDeque<>(n);
+        for (int i = 0; i < n; i++) queue.add(i);
+        while (!queue.isEmpty()) {
+            int x = queue.poll();
+            if (removed[x]) continue;
+            Map<Integer, Integer> outX = out.get(x);
+            Set<Integer> inX = in.get(x);
+            if (outX.isEmpty() || inX.isEmpty()) {
+                for (int to : outX.keySet()) {
+                    in.get(to).remove(x);
+                    queue.add(to);
+                }
+                for (int from : inX) {
+                    out.get(from).remove(x);
+                    queue.add(from);
+                }
+                removed[x] = true;
+            } else if (outX.size() == 1 && inX.size() == 1) {
+                int a = inX.iterator().next();
+                Map.Entry<Integer, Integer> xb = outX.entrySet().iterator().next();
+                int b = xb.getKey();
+                if (a != b && !out.get(a).containsKey(b)) {
+                    int ax = out.get(a).remove(x);
+                    int representative = c.weight(ax) <= c.weight(xb.getValue()) ? ax : xb.getValue();
+                    out.get(a).put(b, representative);
+                    in.get(b).remove(x);
+                    in.get(b).add(a);
+                    removed[x] = true;
+                }
+            }
+        }
+
+        Map<T, Map<T, Long>> kernelMap = new LinkedHashMap<>();
+        Map<V<T>, Map<V<T>, Integer>> origin = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            if (removed[i]) continue;
+            Map<T, Long> edges = new LinkedHashMap<>();
+            Map<V<T>, Integer> originOfEdges = new HashMap<>();
+            for (Map.Entry<Integer, Integer> entry : out.get(i).entrySet()) {
+                V<T> to = c.vertex(entry.getKey());
+                edges.put(to.t(), c.weight(entry.getValue()));
+                originOfEdges.put(to, entry.getValue());
+            }
+            kernelMap.put(c.vertex(i).t(), edges);
+            origin.put(c.vertex(i), originOfEdges);
+        }
+        G<T> kernel = G.create(kernelMap);
+        LOGGER.debug("Reduced graph of {} vertices, {} edges to {} vertices, {} edges", n, c.edgeCount(),
+                kernel.vertices().size(), kernel.edgeCount());
+        return new Reduction<>(c, kernel, origin, edgeSource);
+    }
+
+    public G<T> kernel() {
+        return kernel;
+    }
+
+    /*
+    The edges of the original graph that the given kernel edges stand for.
+     */
+    public Map<V<T>, Map<V<T>, Long>> expand(Map<V<T>, ? extends Collection<V<T>>> kernelEdges) {
+        Map<V<T>, Map<V<T>, Long>> result = new LinkedHashMap<>();
+        for (Map.Entry<V<T>, ? extends Collection<V<T>>> entry : kernelEdges.entrySet()) {
+            Map<V<T>, Integer> originOfEdges = origin.get(entry.getKey());
+            for (V<T> to : entry.getValue()) {
+                int e = originOfEdges.get(to);
+                result.computeIfAbsent(c.vertex(edgeSource[e]), v -> new LinkedHashMap<>())
+                        .put(c.vertex(c.target(e)), c.weight(e));
+            }
+        }
+        return result;
+    }
+
+    /*
+    Runs the action computer on the kernel of each cycle, rather than on the cycle itself.
+    Whatever edges the action removes from the kernel are expanded, and removed from the cycle;
+    they are logged as an EdgeRemoval.
+     */
+    public static <T> BreakCycles.ActionComputer<T> reducing(BreakCycles.ActionComputer<T> actionComputer) {
+        return (g, cycle) -> {
+            G<T> sub = g.subGraph(cycle.vertices());
+            Reduction<T> reduction = of(sub);
+            G<T> kernel = reduction.kernel();
+            BreakCycles.Action<T> action = actionComputer.compute(kernel, new Cycle<>(
+                    new LinkedHashSet<>(kernel.vertices())));
+            if (action == null) return null;
+            G<T> reducedKernel = action.apply();
+            Map<V<T>, Set<V<T>>> removedFromKernel = new LinkedHashMap<>();
+            kernel.forEachEdge((from, to, weight) -> {
+                Map<V<T>, Long> edges = reducedKernel.edges(from);
+                if (edges == null || !edges.containsKey(to)) {
+                    removedFromKernel.computeIfAbsent(from, v -> new LinkedHashSet<>()).add(to);
+                }
+            });
+            Map<V<T>, Map<V<T>, Long>> edgesToRemove = reduction.expand(removedFromKernel);
+            G<T> finalGraph = sub.withFewerEdgesMap(edgesToRemove);
+            BreakCycles.EdgeRemoval<T> info = new BreakCycles.EdgeRemoval<>(edgesToRemove);
+            return new BreakCycles.Action<T>() {
+                @Override
+                public G<T> apply() {
+                    return finalGraph;
+                }
+
+                @Override
+                public BreakCycles.ActionInfo info() {
+                    return info;
+                }
+            };
+        };
+    }
+}
@@ -0,0 +1,214 @@
+package org.e2immu.util.internal.graph.op;
+
+import org.e2immu.util.internal.graph.Csr;
+import org.e2immu.util.internal.graph.G;
+import org.e2immu.util.internal.graph.V;
+
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/*
+Strongly connected components, following Pearce, "A space-efficient algorithm for finding strongly connected
+components" (2016). The depth-first search is iterative, so that long chains cannot overflow the stack;
+all state is kept in int arrays indexed by the vertex indices of G.csr().
+
+Components are numbered in the order in which they are completed: component 0 has no edges to other components,
+and every edge between two components goes from a higher to a lower number (a reverse topological order).
+ */
+public class StronglyConnectedComponents {
+    private final int[] component;
+    private final int count;
+
+    private StronglyConnectedComponents(int[] component, int count) {
+        this.component = component;
+        this.count = count;
+    }
+
+    public static <T> StronglyConnectedComponents of(G<T> g) {
+        return of(g.csr());
+    }
+
+    public static <T> StronglyConnectedComponents of(Csr<T> c) {
+        int n = c.vertexCount();
+        int[] rindex = new int[n];
+        int count = run(c, null, null, rindex, size -> true);
+        int[] component = new int[n];
+        for (int i = 0; i < n; i++) {
+            component[i] = n - 1 - rindex[i];
+        }
+        return new StronglyConnectedComponents(component, count);
+    }
+
+    /*
+    The number of vertices that lie on a cycle, or on a path from one cycle to another: exactly the vertices
+    which Linearize cannot place, in LinearizationMode.ONLY_REVERSE_GRAPH. As in Linearize, self-loops do not count.
+    Every vertex of a component of size > 1 belongs to that set, so the computation stops as soon as those
+    components add up to upperBound, and then returns their total size, which is at least upperBound.
+     */
+    public static <T> int clusterSize(Csr<T> c, int upperBound) {
+        int n = c.vertexCount();
+        int[] rindex = new int[n];
+        int[] onCycles = new int[1];
+        int count = run(c, null, null, rindex, size -> {
+            if (size > 1) onCycles[0] += size;
+            return onCycles[0] < upperBound;
+        });
+        if (count < 0) return onCycles[0];
+        if (onCycles[0] == 0) return 0;
+
+        // group the vertices by component; component k = n - 1 - rindex
+        int[] size = new int[count];
+        for (int i = 0; i < n; i++) size[n - 1 - rindex[i]]++;
+        int[] start = new int[count + 1];
+        for (int k = 0; k < count; k++) start[k + 1] = start[k] + size[k];
+        int[] next = Arrays.copyOf(start, count);
+        int[] members = new int[n];
+        for (int i = 0; i < n; i++) members[next[n - 1 - rindex[i]]++] = i;
+
+        // edges go from higher to lower components: sinks first for 'reaches a cycle'
+        boolean[] reachesCycle = new boolean[count];
+        for (int k = 0; k < count; k++) {
+            boolean reaches = size[k] > 1;
+            for (int m = start[k]; m < start[k + 1] && !reaches; m++) {
+                int i = members[m];
+                for (int e = c.start(i); e < c.end(i); e++) {
+                    if (reachesCycle[n - 1 - rindex[c.target(e)]]) {
+                        reaches = true;
+                        break;
+                    }
+                }
+            }
+            reachesCycle[k] = reaches;
+        }
+        boolean[] fromCycle = new boolean[count];
+        int cluster = 0;
+        for (int k = count - 1; k >= 0; k--) {
+            if (size[k] > 1) fromCycle[k] = true;
+            if (!fromCycle[k]) continue;
+            if (reachesCycle[k]) cluster += size[k];
+            for (int m = start[k]; m < start[k + 1]; m++) {
+                int i = members[m];
+                for (int e = c.start(i); e < c.end(i); e++) {
+                    fromCycle[n - 1 - rindex[c.target(e)]] = true;
+                }
+            }
+        }
+        return cluster;
+    }
+
+    /*
+    Pearce's algorithm, iteratively. Afterwards, rindex[i] is n - 1 - component of i, for all vertices visited.
+    When 'vertices' is not null, the search is restricted to those vertices; the edge filter (on edge positions
+    in the CSR arrays) must then reject all edges leaving them. A null filter accepts all edges.
+    The predicate receives the size of each completed component; when it returns false, the search stops and
+    -1 is returned. Otherwise, the result is the number of components.
+     */
+    static <T> int run(Csr<T> c, int[] vertices, IntPredicate acceptEdge, int[] rindex,
+                       IntPredicate componentCompleted) {
+        int n = c.vertexCount();
+        // while visiting, rindex holds the visitation index (from 1)
+        boolean[] root = new boolean[n];
+        int[] nextEdge = new int[n];
+        int[] callStack = new int[n];
+        int[] stack = new int[n];
+        int callTop = 0;
+        int top = 0;
+        int index = 1;
+        int componentValue = n - 1;
+
+        int starts = vertices == null ? n : vertices.length;
+        for (int s = 0; s < starts; s++) {
+            int start = vertices == null ? s : vertices[s];
+            if (rindex[start] != 0) continue;
+            rindex[start] = index++;
+            root[start] = true;
+            nextEdge[start] = c.start(start);
+            callStack[callTop++] = start;
+            while (callTop > 0) {
+                int v = callStack[callTop - 1];
+                if (nextEdge[v] < c.end(v)) {
+                    int e = nextEdge[v]++;
+                    if (acceptEdge != null && !acceptEdge.test(e)) continue;
+                    int w = c.target(e);
+                    if (rindex[w] == 0) {
+                        rindex[w] = index++;
+                        root[w] = true;
+                        nextEdge[w] = c.start(w);
+                        callStack[callTop++] = w;
+                    } else if (rindex[w] < rindex[v]) {
+                        rindex[v] = rindex[w];
+                        root[v] = false;
+                    }
+                    continue;
+                }
+                callTop--;
+                if (root[v]) {
+                    index--;
+                    int size = 1;
+                    while (top > 0 && rindex[v] <= rindex[stack[top - 1]]) {
+                        int w = stack[--top];
+                        rindex[w] = componentValue;
+                        index--;
+                        size++;
+                    }
+                    rindex[v] = componentValue--;
+                    if (!componentCompleted.test(size)) return -1;
+                } else {
+                    stack[top++] = v;
+                }
+                if (callTop > 0) {
+                    int parent = callStack[callTop - 1];
+                    if (rindex[v] < rindex[parent]) {
+                        rindex[parent] = rindex[v];
+                        root[parent] = false;
+                    }
+                }
+            }
+        }
+        return n - 1 - componentValue;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    // the component of the vertex with index i in G.csr()
+    public int component(int i) {
+        return component[i];
+    }
+
+    /*
+    The components with more than one vertex, or with a self-loop, in the order of their first vertex.
+     */
+    public <T> Cycles<T> cycles(G<T> g) {
+        Csr<T> c = g.csr();
+        assert c.vertexCount() == component.length;
+        int[] size = new int[count];
+        boolean[] selfLoop = new boolean[count];
+        for (int i = 0; i < component.length; i++) {
+            size[component[i]]++;
+            for (int e = c.start(i); e < c.end(i); e++) {
+                if (c.target(e) == i) selfLoop[component[i]] = true;
+            }
+        }
+        List<Set<V<T>>> sets = new ArrayList<>(Collections.nCopies(count, null));
+        List<Set<V<T>>> inOrder = new ArrayList<>();
+        for (int i = 0; i < component.length; i++) {
+            int k = component[i];
+            if (size[k] > 1 || selfLoop[k]) {
+                Set<V<T>> set = sets.get(k);
+                if (set == null) {
+                    set = new LinkedHashSet<>();
+                    sets.set(k, set);
+                    inOrder.add(set);
+                }
+                set.add(c.vertex(i));
+            }
+        }
+        Set<Cycle<T>> cycles = new LinkedHashSet<>();
+        for (Set<V<T>> set : inOrder) {
+            cycles.add(new Cycle<>(set));
+        }
+        return new Cycles<>(cycles);
+    }
+}
@@ -0,0 +1,64 @@
+package org.e2immu.util.internal.graph.util;
+
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/*
+Iterates over the positions 0..n-1, ordered by their key according to the comparator, and by position when
+the keys are equal. This is exactly the order of a stable sort.
+
+The positions are kept in a binary heap, which is built in O(n); each call to nextInt() costs O(log n).
+When a consumer only needs the first few positions, most of the sorting work is never done.
+ */
+public class LazySort implements PrimitiveIterator.OfInt {
+    private final long[] keys;
+    private final Comparator<Long> comparator;
+    private final int[] heap;
+    private int size;
+
+    public LazySort(long[] keys, int n, Comparator<Long> comparator) {
+        assert n <= keys.length;
+        this.keys = keys;
+        this.comparator = comparator;
+        this.heap = new int[n];
+        for (int i = 0; i < n; i++) heap[i] = i;
+        this.size = n;
+        for (int i = n / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    private boolean less(int p1, int p2) {
+        int c = comparator.compare(keys[p1], keys[p2]);
+        return c < 0 || c == 0 && p1 < p2;
+    }
+
+    private void siftDown(int i) {
+        int p = heap[i];
+        int half = size / 2;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && less(heap[right], heap[child])) child = right;
+            if (!less(heap[child], p)) break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = p;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return size > 0;
+    }
+
+    @Override
+    public int nextInt() {
+        if (size == 0) throw new NoSuchElementException();
+        int result = heap[0];
+        heap[0] = heap[--size];
+        if (size > 0) siftDown(0);
+        return result;
+    }
+}
@@ -0,0 +1,265 @@
+package org.e2immu.util.internal.graph;
+
+import org.e2immu.util.internal.graph.op.Linearize;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestG {
+
+    private static Map<String, Map<String, Long>> initialGraph() {
+        Map<String, Map<String, Long>> map = new LinkedHashMap<>();
+        map.put("v1", Map.of("v2", 1L, "v3", 2L));
+        map.put("v2", Map.of("v3", 3L));
+        map.put("v3", Map.of("v4", 6L));
+        map.put("v4", Map.of("v5", 4L));
+        map.put("v5", Map.of("v1", 5L));
+        map.put("v6", Map.of());
+        return map;
+    }
+
+    @Test
+    public void testCompact() {
+        G<String> g = G.create(initialGraph());
+        G<String> c = G.createCompact(initialGraph());
+        assertTrue(c.isCompact());
+        assertFalse(g.isCompact());
+        assertEquals(g.toString(), c.toString());
+        assertEquals(g, c);
+        assertEquals(c, g.compact());
+
+        V<String> v1 = c.vertex("v1");
+        assertEquals(2, c.edges(v1).size());
+        assertEquals(2L, c.edges(v1).get(c.vertex("v3")));
+        assertNull(c.edges(c.vertex("v6")));
+        assertEquals(g.edges(v1), c.edges(v1));
+
+        Csr<String> csr = c.csr();
+        assertEquals(6, csr.vertexCount());
+        assertEquals(6, csr.edgeCount());
+        int i1 = csr.indexOf(v1);
+        assertEquals(v1, csr.vertex(i1));
+        assertEquals(2, csr.outDegree(i1));
+        assertEquals(-1, csr.indexOf(new V<>("v7")));
+
+        G<String> sub = c.subGraph(Set.of(c.vertex("v1"), c.vertex("v2"), c.vertex("v3")));
+        assertEquals("v1->1->v2, v1->2->v3, v2->3->v3", sub.toString());
+        G<String> fewer = c.withFewerEdgesMap(Map.of(c.vertex("v5"), Map.of(v1, 5L)));
+        assertEquals("L=[v5, v6]; [v4]; [v3]; [v2]; [v1] P= R=", Linearize.linearize(fewer).toString());
+        assertEquals(Linearize.linearize(g).toString(), Linearize.linearize(c).toString());
+
+        // an edge to a value that is not a key of the map
+        Map<String, Map<String, Long>> unknown = Map.of("v1", Map.of("v2", 1L));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> G.createCompact(unknown));
+        assertEquals("Edge v1 -> v2: v2 is not a vertex", e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> G.create(unknown));
+    }
+
+    @Test
+    public void testWithFewerEdges() {
+        G<String> g = G.create(initialGraph());
+        V<String> v1 = g.vertex("v1");
+        V<String> v2 = g.vertex("v2");
+        V<String> v3 = g.vertex("v3");
+        V<String> v5 = g.vertex("v5");
+        G<String> g1 = g.withFewerEdgesMap(Map.of(v1, Map.of(v3, 2L)));
+        assertEquals("v1->1->v2, v2->3->v3, v3->6->v4, v4->4->v5, v5->5->v1", g1.toString());
+        G<String> g2 = g1.withFewerEdges(Map.of(v2, Set.of(v3), v5, Set.of(v1)));
+        assertEquals("v1->1->v2, v3->6->v4, v4->4->v5", g2.toString());
+        assertNull(g2.edges(v2));
+        assertEquals(Map.of(v2, 1L), g2.edges(v1));
+        int count = 0;
+        for (Map.Entry<V<String>, Map<V<String>, Long>> ignored : g2.edges()) count++;
+        assertEquals(3, count);
+        assertEquals(G.create(Map.of("v1", Map.of("v2", 1L), "v2", Map.of(), "v3", Map.of("v4", 6L),
+                "v4", Map.of("v5", 4L), "v5", Map.of(), "v6", Map.of())), g2);
+
+        // nothing to remove
+        assertSame(g, g.withFewerEdges(Map.of(v2, Set.of(v1))));
+        // the base graph is not affected
+        assertEquals("v1->1->v2, v1->2->v3, v2->3->v3, v3->6->v4, v4->4->v5, v5->5->v1", g.toString());
+    }
+
+    @Test
+    public void testIncoming() {
+        G<String> g = G.create(initialGraph());
+        V<String> v1 = g.vertex("v1");
+        V<String> v2 = g.vertex("v2");
+        V<String> v3 = g.vertex("v3");
+        V<String> v5 = g.vertex("v5");
+        assertEquals(Map.of(v1, 2L, v2, 3L), g.incomingEdges(v3));
+        assertEquals(2, g.inDegree(v3));
+        assertEquals(0, g.inDegree(g.vertex("v6")));
+        assertNull(g.incomingEdges(g.vertex("v6")));
+        assertEquals(2, g.outDegree(v1));
+
+        G<String> g1 = g.withFewerEdgesMap(Map.of(v1, Map.of(v3, 2L), v5, Map.of(v1, 5L)));
+        assertEquals(Map.of(v2, 3L), g1.incomingEdges(v3));
+        assertNull(g1.incomingEdges(v1));
+        // the base graph's index is not affected
+        assertEquals(Map.of(v1, 2L, v2, 3L), g.incomingEdges(v3));
+        assertEquals(Map.of(v5, 5L), g.incomingEdges(v1));
+
+        G<String> reverse = g.reverse(t -> true);
+        assertEquals("v1->5->v5, v2->1->v1, v3->2->v1, v3->3->v2, v4->6->v3, v5->4->v4", reverse.toString());
+        G<String> reverseSub = g.mutableReverseSubGraph(Set.of(v1, v2, v3));
+        assertEquals("v2->1->v1, v3->2->v1, v3->3->v2", reverseSub.toString());
+        assertEquals(Map.of(v1, 5L, v2, 1L, v3, 5L, g.vertex("v4"), 6L, v5, 4L),
+                g.incomingVertexWeight(Long::sum));
+
+        Csr<String> transposed = g.csr().transposed();
+        int i3 = g.indexOf(v3);
+        assertEquals(2, transposed.outDegree(i3));
+        assertEquals(g.indexOf(v1), transposed.target(transposed.start(i3)));
+        assertEquals(3L, transposed.weight(transposed.start(i3) + 1));
+        assertSame(g.csr(), transposed.transposed());
+    }
+
+    @Test
+    public void testConcurrentBuilder() {
+        G.ConcurrentBuilder<Integer> cb = new G.ConcurrentBuilder<>(Long::sum, Integer::compareTo);
+        IntStream.range(0, 1000).parallel().forEach(i -> {
+            cb.mergeEdge(i % 37, (i * 7) % 37, 1L);
+            cb.mergeEdge(i % 37, (i + 1) % 37, 2L);
+        });
+        G<Integer> g = cb.build();
+
+        G.Builder<Integer> b = new G.Builder<>(Long::sum);
+        for (int i = 0; i < 37; i++) b.addVertex(i);
+        for (int i = 0; i < 1000; i++) {
+            b.mergeEdge(i % 37, (i * 7) % 37, 1L);
+            b.mergeEdge(i % 37, (i + 1) % 37, 2L);
+        }
+        G<Integer> sequential = b.build();
+        assertEquals(sequential.toString(), g.toString());
+        assertEquals(sequential.vertices().stream().sorted(Comparator.comparing(V::t)).toList(),
+                List.copyOf(g.vertices()));
+        assertEquals(g, cb.buildCompact());
+    }
+
+    @Test
+    public void testEdgeIterator() {
+        G<String> g = G.create(initialGraph());
+        Iterator<Map<V<String>, Map<V<String>, Long>>> iterator = g.edgeIterator(Long::compareTo, 6L);
+        List<String> list = new ArrayList<>();
+        iterator.forEachRemaining(m -> list.add(m.toString()));
+        assertEquals("[{v1={v2=1}}, {v1={v3=2}}, {v2={v3=3}}, {v4={v5=4}}, {v5={v1=5}}]", list.toString());
+
+        Iterator<Map<V<String>, Map<V<String>, Long>>> reversed = g.edgeIterator(Comparator.reverseOrder(), null);
+        assertEquals("{v3={v4=6}}", reversed.next().toString());
+        assertEquals("{v5={v1=5}}", reversed.next().toString());
+    }
+
+    @Test
+    public void testForEachEdge() {
+        for (G<String> g : List.of(G.create(initialGraph()), G.createCompact(initialGraph()))) {
+            assertEquals(6, g.edgeCount());
+            long[] sum = new long[1];
+            g.forEachEdge((from, to, weight) -> sum[0] += weight);
+            assertEquals(21L, sum[0]);
+            Csr<String> csr = g.csr();
+            List<String> list = new ArrayList<>();
+            g.forEachIntEdge((from, to, weight) -> {
+                assertEquals(g.edges(csr.vertex(from)).get(csr.vertex(to)), weight);
+                list.add(from + "" + to);
+            });
+            assertEquals("[01, 02, 12, 23, 34, 40]", list.stream().sorted().toList().toString());
+        }
+    }
+
+    @Test
+    public void testSubGraphView() {
+        G<String> g = G.create(initialGraph());
+        V<String> v1 = g.vertex("v1");
+        V<String> v2 = g.vertex("v2");
+        V<String> v3 = g.vertex("v3");
+        V<String> v4 = g.vertex("v4");
+        G<String> sub = g.subGraph(new LinkedHashSet<>(List.of(v1, v2, v3, v4)));
+        assertEquals("v1->1->v2, v1->2->v3, v2->3->v3, v3->6->v4", sub.toString());
+        assertNull(sub.edges(v4));
+        assertNull(sub.edges(g.vertex("v5")));
+        assertEquals(Map.of(v4, 6L), sub.edges(v3));
+
+        G<String> sub2 = sub.subGraph(Set.of(v1, v2, v3), w -> w > 1);
+        assertEquals("v1->2->v3, v2->3->v3", sub2.toString());
+        assertEquals(G.create(Map.of("v1", Map.of("v3", 2L), "v2", Map.of("v3", 3L), "v3", Map.of())), sub2);
+
+        G<String> fewer = sub.withFewerEdges(Map.of(v1, Set.of(v3)));
+        assertEquals("v1->1->v2, v2->3->v3, v3->6->v4", fewer.toString());
+        assertEquals(fewer.toString(), fewer.materialize().toString());
+        assertEquals(fewer, fewer.materialize());
+
+        // views deeper than the maximum are materialized
+        G<String> deep = g;
+        List<String> toRemove = List.of("v1", "v2", "v1", "v3", "v3", "v4", "v4", "v5");
+        for (int i = 0; i < toRemove.size(); i += 2) {
+            deep = deep.subGraph(new LinkedHashSet<>(deep.vertices()));
+            deep = deep.withFewerEdges(Map.of(deep.vertex(toRemove.get(i)), Set.of(deep.vertex(toRemove.get(i + 1)))));
+        }
+        assertEquals("v2->3->v3, v5->5->v1", deep.toString());
+    }
+
+    @Test
+    public void testFingerprint() {
+        G<String> g = G.create(initialGraph());
+        V<String> v1 = g.vertex("v1");
+        V<String> v3 = g.vertex("v3");
+        V<String> v5 = g.vertex("v5");
+        assertEquals(g.fingerprint(), G.createCompact(initialGraph()).fingerprint());
+        assertEquals(g.hashCode(), G.create(initialGraph()).hashCode());
+
+        G<String> fewer = g.withFewerEdges(Map.of(v1, Set.of(v3), v5, Set.of(v1)));
+        Map<String, Map<String, Long>> map = new LinkedHashMap<>(initialGraph());
+        map.put("v1", Map.of("v2", 1L));
+        map.put("v5", Map.of());
+        G<String> expected = G.create(map);
+        assertEquals(expected.fingerprint(), fewer.fingerprint());
+        assertEquals(expected, fewer);
+        assertNotEquals(g.fingerprint(), fewer.fingerprint());
+        assertNotEquals(g, fewer);
+
+        G<String> sub = g.subGraph(new LinkedHashSet<>(List.of(v1, g.vertex("v2"), v3, g.vertex("v4"))));
+        G<String> expectedSub = G.create(Map.of("v1", Map.of("v2", 1L, "v3", 2L), "v2", Map.of("v3", 3L),
+                "v3", Map.of("v4", 6L), "v4", Map.of()));
+        assertEquals(expectedSub.fingerprint(), sub.fingerprint());
+        assertEquals(expectedSub, sub);
+        G<String> small = sub.subGraph(Set.of(v1, v3), w -> w < 6);
+        assertEquals(G.create(Map.of("v1", Map.of("v3", 2L), "v3", Map.of())).fingerprint(), small.fingerprint());
+
+        // weights count
+        Map<String, Map<String, Long>> map2 = new LinkedHashMap<>(initialGraph());
+        map2.put("v2", Map.of("v3", 4L));
+        assertNotEquals(g.fingerprint(), G.create(map2).fingerprint());
+    }
+
+    @Test
+    public void testVertexIndex() {
+        G<String> g = G.create(initialGraph());
+        assertEquals(6, g.vertexCount());
+        for (int i = 0; i < g.vertexCount(); i++) {
+            assertEquals("v" + (i + 1), g.vertexAt(i).t());
+            assertEquals(i, g.indexOf(g.vertexAt(i)));
+        }
+        V<String> v1 = g.vertex("v1");
+        V<String> v5 = g.vertex("v5");
+        G<String> fewer = g.withFewerEdges(Map.of(v5, Set.of(v1)));
+        assertEquals(4, fewer.indexOf(v5));
+        assertEquals(g.csr().indexOf(v5), fewer.csr().indexOf(v5));
+        assertEquals(0, fewer.csr().outDegree(4));
+
+        G<String> sub = g.subGraph(new LinkedHashSet<>(List.of(v5, v1)));
+        assertEquals(0, sub.indexOf(v5));
+        assertEquals(1, sub.indexOf(v1));
+        assertEquals(-1, sub.indexOf(g.vertex("v2")));
+    }
+}
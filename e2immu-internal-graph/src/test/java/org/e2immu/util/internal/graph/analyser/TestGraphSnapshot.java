@@ -0,0 +1,44 @@
+package org.e2immu.util.internal.graph.analyser;
+
+import org.e2immu.util.internal.graph.G;
+import org.e2immu.util.internal.graph.op.Linearize;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestGraphSnapshot {
+
+    @Test
+    public void test(@TempDir Path tempDir) throws IOException {
+        Main main = new Main();
+        G<TypeGraphIO.Node> g = main.load(Main.CLASSPATH + "org/e2immu/graph/typeDependencies.gml");
+        Path path = tempDir.resolve("typeDependencies" + GraphSnapshot.EXTENSION);
+        TypeGraphIO.writeSnapshot(path, g);
+
+        G<TypeGraphIO.Node> loaded = main.load(path.toString());
+        assertTrue(loaded.isCompact());
+        assertEquals(g.vertices().size(), loaded.vertices().size());
+        assertEquals(g.edgeCount(), loaded.edgeCount());
+        assertEquals(g.toString(), loaded.toString());
+        assertEquals(Linearize.linearize(g).toString(), Linearize.linearize(loaded).toString());
+
+        byte[] bytes = Files.readAllBytes(path);
+        G<TypeGraphIO.Node> read = TypeGraphIO.readSnapshot(ByteBuffer.wrap(bytes));
+        assertEquals(g.toString(), read.toString());
+
+        assertThrows(IOException.class, () -> TypeGraphIO.readSnapshot(ByteBuffer.wrap(new byte[20])));
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 8);
+        assertThrows(IOException.class, () -> TypeGraphIO.readSnapshot(ByteBuffer.wrap(truncated)));
+        // the targets are followed by the weights, 8 bytes per edge
+        ByteBuffer badTarget = ByteBuffer.wrap(bytes.clone());
+        badTarget.putInt(bytes.length - 12 * g.edgeCount(), g.vertices().size());
+        assertThrows(IOException.class, () -> TypeGraphIO.readSnapshot(badTarget));
+    }
+}
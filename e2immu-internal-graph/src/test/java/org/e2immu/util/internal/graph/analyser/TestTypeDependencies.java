@@ -43,6 +43,17 @@ public class TestTypeDependencies {
         assertEquals(168, lin.list().size()); // must be <= 1042, the number of nodes
     }
 
+    @Test
+    public void testFeedbackArcSet() throws IOException {
+        Main main = new Main();
+        BreakCycles.Linearization<TypeGraphIO.Node> lin = main.go(new String[]{Main.CLASSPATH
+                + "org/e2immu/graph/typeDependencies.gml", Main.FEEDBACK_ARC_SET});
+        // one action per group of cycles, each removing all feedback arcs at once
+        assertEquals(1, lin.maxCycleSize());
+        assertEquals(5, lin.actionLog().size());
+        assertEquals(51, lin.list().size());
+    }
+
     @Test
     public void test2() throws IOException {
         Main main = new Main();
@@ -0,0 +1,44 @@
+package org.e2immu.util.internal.graph.op;
+
+import org.e2immu.util.internal.graph.G;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestBreakCycles {
+
+    @Test
+    public void testBreakCyclesInPool() {
+        // ten independent groups, each a ring of 6 with a chord, and a vertex pointing into the ring
+        Random random = new Random(11);
+        Map<String, Map<String, Long>> initialGraph = new LinkedHashMap<>();
+        for (int k = 0; k < 10; k++) {
+            for (int i = 0; i < 6; i++) {
+                Map<String, Long> edges = new LinkedHashMap<>();
+                edges.put("v" + k + "_" + ((i + 1) % 6), 1L + random.nextInt(10));
+                edges.put("v" + k + "_" + random.nextInt(6), 1L + random.nextInt(10));
+                initialGraph.put("v" + k + "_" + i, edges);
+            }
+            initialGraph.put("w" + k, Map.of("v" + k + "_0", 1L));
+        }
+        G<String> g = G.create(initialGraph);
+        assertEquals(10, Linearize.linearize(g).remainingCycles().size());
+        BreakCycles.Linearization<String> sequential = new BreakCycles<>(new GreedyEdgeRemoval<String>()).go(g);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            BreakCycles.Linearization<String> concurrent = new BreakCycles<>(new GreedyEdgeRemoval<String>(), pool)
+                    .go(g);
+            assertEquals(sequential.toString(), concurrent.toString());
+            assertEquals(sequential.actionLog(), concurrent.actionLog());
+            assertTrue(sequential.actionLog().size() >= 10);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
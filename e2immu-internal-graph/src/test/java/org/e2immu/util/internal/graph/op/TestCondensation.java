@@ -0,0 +1,58 @@
+package org.e2immu.util.internal.graph.op;
+
+import org.e2immu.util.internal.graph.G;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestCondensation {
+
+    @Test
+    public void test() {
+        Map<String, Map<String, Long>> initialGraph = new LinkedHashMap<>();
+        initialGraph.put("v1", Map.of("v2", 1L));
+        initialGraph.put("v2", Map.of("v3", 1L));
+        initialGraph.put("v3", Map.of("v2", 1L, "v4", 1L));
+        initialGraph.put("v4", Map.of());
+        initialGraph.put("v5", Map.of("v4", 1L));
+        initialGraph.put("v6", Map.of("v1", 1L, "v6", 1L));
+        G<String> g = G.create(initialGraph);
+        Condensation<String> condensation = Linearize.condensation(g);
+        assertEquals(5, condensation.componentCount());
+        assertEquals(4, condensation.levelCount());
+        assertEquals("[v4]; [v2, v3], [v5]; [v1]; [v6]", condensation.cycleLevels().stream()
+                .map(set -> set.stream().map(cycle -> cycle.vertices().toString()).sorted()
+                        .collect(Collectors.joining(", ")))
+                .collect(Collectors.joining("; ")));
+
+        int k = condensation.component(g.vertex("v2"));
+        assertEquals(k, condensation.component(g.vertex("v3")));
+        assertEquals(2, condensation.size(k));
+        assertEquals(1, condensation.level(k));
+        assertEquals("[1, 2]", Arrays.toString(condensation.members(k)));
+        assertEquals("[" + condensation.component(g.vertex("v4")) + "]",
+                Arrays.toString(condensation.successors(k)));
+        assertEquals(3, condensation.levelOfVertex(g.indexOf(g.vertex("v6"))));
+    }
+
+    @Test
+    public void testAcyclic() {
+        Map<String, Map<String, Long>> initialGraph = new LinkedHashMap<>();
+        initialGraph.put("v1", Map.of("v2", 1L, "v3", 1L));
+        initialGraph.put("v2", Map.of());
+        initialGraph.put("v3", Map.of("v4", 1L));
+        initialGraph.put("v4", Map.of("v2", 1L));
+        initialGraph.put("v5", Map.of("v5", 1L));
+        G<String> g = G.create(initialGraph);
+        Condensation<String> condensation = Linearize.condensation(g);
+        assertEquals(Linearize.linearize(g).linearized().list(),
+                condensation.cycleLevels().stream()
+                        .map(set -> set.stream().flatMap(cycle -> cycle.vertices().stream()).collect(Collectors.toSet()))
+                        .toList());
+    }
+}
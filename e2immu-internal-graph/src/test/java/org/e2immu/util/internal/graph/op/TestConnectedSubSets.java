@@ -0,0 +1,61 @@
+package org.e2immu.util.internal.graph.op;
+
+import org.e2immu.util.internal.graph.G;
+import org.e2immu.util.internal.graph.V;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestConnectedSubSets {
+
+    private static List<Set<V<String>>> connectedSubSets(G<String> g, String... startingPoints) {
+        Set<V<String>> set = new LinkedHashSet<>();
+        for (String s : startingPoints) set.add(g.vertex(s));
+        return Linearize.findConnectedSubSets(g, set).stream().map(Cycle::vertices).toList();
+    }
+
+    @Test
+    public void test() {
+        Map<String, Map<String, Long>> initialGraph = new LinkedHashMap<>();
+        initialGraph.put("c1", Map.of("c2", 1L));
+        initialGraph.put("c2", Map.of("c1", 1L));
+        initialGraph.put("x", Map.of("c1", 1L));
+        initialGraph.put("y", Map.of("y2", 1L));
+        initialGraph.put("y2", Map.of("y", 1L, "z", 1L));
+        initialGraph.put("z", Map.of());
+        G<String> g = G.create(initialGraph);
+
+        // x joins the group of c1, after it; z is not a starting point, but is reachable from y
+        assertEquals("[[c1, c2, x], [y, y2, z]]", connectedSubSets(g, "c1", "y", "x").toString());
+        // following x first: c1 and c2 are visited from x
+        assertEquals("[[x, c1, c2], [y, y2, z]]", connectedSubSets(g, "x", "y", "c1").toString());
+        assertEquals("[[y, y2, z], [c2, c1, x]]", connectedSubSets(g, "y", "c2", "x").toString());
+    }
+
+    @Test
+    public void testMerge() {
+        Map<String, Map<String, Long>> initialGraph = new LinkedHashMap<>();
+        initialGraph.put("a", Map.of("a2", 1L));
+        initialGraph.put("a2", Map.of("a", 1L));
+        initialGraph.put("b", Map.of("b2", 1L));
+        initialGraph.put("b2", Map.of("b", 1L));
+        initialGraph.put("c", Map.of("c2", 1L));
+        initialGraph.put("c2", Map.of("c", 1L));
+        Map<String, Long> edgesOfM = new LinkedHashMap<>();
+        edgesOfM.put("b", 1L);
+        edgesOfM.put("a", 1L);
+        initialGraph.put("m", edgesOfM);
+        G<String> g = G.create(initialGraph);
+
+        // m joins the groups of a and b: the vertices are in the order of visiting, the group takes the place of a's
+        assertEquals("[[a, a2, b, b2, m], [c, c2]]", connectedSubSets(g, "a", "c", "b", "m").toString());
+        assertEquals("[[c, c2], [b, b2, a, a2, m]]", connectedSubSets(g, "c", "b", "a", "m").toString());
+        assertEquals("[[m, b, a, b2, a2], [c, c2]]", connectedSubSets(g, "m", "c", "a", "b").toString());
+    }
+}
@@ -0,0 +1,65 @@
+package org.e2immu.util.internal.graph.op;
+
+import org.e2immu.util.internal.graph.G;
+import org.e2immu.util.internal.graph.V;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestDynamicLinearization {
+
+    @Test
+    public void test() {
+        Map<String, Map<String, Long>> initialGraph = new LinkedHashMap<>();
+        initialGraph.put("v1", Map.of("v2", 1L));
+        initialGraph.put("v2", Map.of("v3", 1L));
+        initialGraph.put("v3", Map.of());
+        initialGraph.put("v4", Map.of("v3", 1L));
+        initialGraph.put("v5", Map.of("v5", 1L));
+        G<String> g = G.create(initialGraph);
+        DynamicLinearization<String> dl = new DynamicLinearization<>(g);
+        assertEquals("[v3, v5]; [v2, v4]; [v1]", dl.hierarchy().toString());
+        assertEquals(Linearize.linearize(g).linearized().toString(), dl.hierarchy().toString());
+
+        V<String> v1 = g.vertex("v1");
+        V<String> v2 = g.vertex("v2");
+        V<String> v3 = g.vertex("v3");
+        V<String> v4 = g.vertex("v4");
+        V<String> v5 = g.vertex("v5");
+        assertNull(dl.addEdge(v3, v5, 1L));
+        assertEquals("[v5]; [v3]; [v2, v4]; [v1]", dl.hierarchy().toString());
+        assertEquals(3, dl.level(v1));
+
+        // v1 -> v2 -> v3 -> v5, so v5 -> v1 closes a cycle, and is refused
+        Cycle<String> cycle = dl.addEdge(v5, v1, 1L);
+        assertNotNull(cycle);
+        assertEquals("[v1, v2, v3, v5]", cycle.vertices().toString());
+        assertEquals("[v5]; [v3]; [v2, v4]; [v1]", dl.hierarchy().toString());
+
+        V<String> v6 = new V<>("v6");
+        assertNull(dl.addEdge(v5, v6, 1L));
+        assertEquals("[v6]; [v5]; [v3]; [v2, v4]; [v1]", dl.hierarchy().toString());
+
+        assertTrue(dl.removeEdge(v2, v3));
+        assertFalse(dl.removeEdge(v2, v3));
+        assertEquals("[v2, v6]; [v1, v5]; [v3]; [v4]", dl.hierarchy().toString());
+        assertEquals(Linearize.linearize(dl.graph()).linearized().toString(), dl.hierarchy().toString());
+
+        // now the cycle is broken
+        assertNull(dl.addEdge(v5, v1, 1L));
+        assertEquals("[v2, v6]; [v1]; [v5]; [v3]; [v4]", dl.hierarchy().toString());
+        assertEquals(6, dl.vertexCount());
+    }
+
+    @Test
+    public void testCyclic() {
+        Map<String, Map<String, Long>> initialGraph = new LinkedHashMap<>();
+        initialGraph.put("v1", Map.of("v2", 1L));
+        initialGraph.put("v2", Map.of("v1", 1L));
+        G<String> g = G.create(initialGraph);
+        assertThrows(IllegalArgumentException.class, () -> new DynamicLinearization<>(g));
+    }
+}
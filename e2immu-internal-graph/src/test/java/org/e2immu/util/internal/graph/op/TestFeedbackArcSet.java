@@ -0,0 +1,55 @@
+package org.e2immu.util.internal.graph.op;
+
+import org.e2immu.util.internal.graph.G;
+import org.e2immu.util.internal.graph.V;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestFeedbackArcSet {
+
+    @Test
+    public void test() {
+        Map<String, Map<String, Long>> initialGraph = Map.of(
+                "v1", Map.of("v2", 1L, "v3", 2L),
+                "v2", Map.of("v3", 3L),
+                "v3", Map.of("v4", 6L),
+                "v4", Map.of("v5", 4L),
+                "v5", Map.of("v1", 5L, "v3", 5L));
+        G<String> g = G.create(initialGraph);
+        FeedbackArcSet<String> feedbackArcSet = new FeedbackArcSet<>();
+        // v4->v5 is on both cycles, and is the lightest edge that breaks both
+        assertEquals("{v4={v5=4}}", feedbackArcSet.feedbackArcs(g).toString());
+
+        BreakCycles.Linearization<String> linearization = new BreakCycles<>(feedbackArcSet).go(g);
+        assertEquals("[v4]; [v3]; [v2]; [v1]; [v5]", linearization.toString());
+        assertEquals("[EdgeRemoval[edges={v4={v5=4}}]]", linearization.actionLog().toString());
+
+        // with a weight function that makes v4->v5 expensive, the other edge on all cycles goes instead
+        FeedbackArcSet<String> expensive = new FeedbackArcSet<>(w -> w == 4L ? 100L : w);
+        Map<V<String>, Map<V<String>, Long>> arcs = expensive.feedbackArcs(g);
+        assertEquals("{v3={v4=6}}", arcs.toString());
+    }
+
+    @Test
+    public void testRandom() {
+        Random random = new Random(13);
+        for (int round = 0; round < 20; round++) {
+            Map<Integer, Map<Integer, Long>> initialGraph = new LinkedHashMap<>();
+            for (int i = 0; i < 300; i++) {
+                Map<Integer, Long> edges = new LinkedHashMap<>();
+                for (int k = 0; k < 3; k++) edges.put(random.nextInt(300), 1L + random.nextInt(10));
+                initialGraph.put(i, edges);
+            }
+            G<Integer> g = G.createCompact(initialGraph);
+            Map<V<Integer>, Map<V<Integer>, Long>> arcs = new FeedbackArcSet<Integer>().feedbackArcs(g);
+            assertEquals(0, Linearize.qualityBasedOnTotalCluster(g.withFewerEdgesMap(arcs)));
+            assertTrue(arcs.values().stream().mapToInt(Map::size).sum() < g.edgeCount() / 2);
+        }
+    }
+}
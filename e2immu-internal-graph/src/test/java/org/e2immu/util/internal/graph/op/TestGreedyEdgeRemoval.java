@@ -0,0 +1,67 @@
+package org.e2immu.util.internal.graph.op;
+
+import org.e2immu.util.internal.graph.EdgeIterator;
+import org.e2immu.util.internal.graph.G;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestGreedyEdgeRemoval {
+
+    @Test
+    public void testBatch() {
+        // two triangles, connected by a1->b1
+        Map<String, Map<String, Long>> initialGraph = new LinkedHashMap<>();
+        initialGraph.put("a1", Map.of("a2", 3L, "b1", 1L));
+        initialGraph.put("a2", Map.of("a3", 4L));
+        initialGraph.put("a3", Map.of("a1", 5L));
+        initialGraph.put("b1", Map.of("b2", 6L));
+        initialGraph.put("b2", Map.of("b3", 2L));
+        initialGraph.put("b3", Map.of("b1", 7L));
+        G<String> g = G.create(initialGraph);
+        EdgeIterator<String> edgeIterator = gg -> gg.edgeIterator(Long::compareTo, null);
+
+        BreakCycles.Linearization<String> one = new BreakCycles<>(new GreedyEdgeRemoval<>(String::valueOf,
+                edgeIterator, null)).go(g);
+        assertEquals("[EdgeRemoval[edges={b2={b3=2}}], EdgeRemoval[edges={a1={a2=3}}]]", one.actionLog().toString());
+
+        BreakCycles.Linearization<String> batch = new BreakCycles<>(new GreedyEdgeRemoval<>(String::valueOf,
+                edgeIterator, null, 5, 0.0)).go(g);
+        assertEquals("[EdgeRemoval[edges={b2={b3=2}, a1={a2=3}}]]", batch.actionLog().toString());
+        // one recursion fewer, and here, one level fewer
+        assertEquals("[b2]; [b1]; [b3]; [a1]; [a3]; [a2]", one.toString());
+        assertEquals("[b2]; [b1]; [a1, b3]; [a3]; [a2]", batch.toString());
+    }
+
+    @Test
+    public void testTolerance() {
+        // a triangle and a square, connected by a1->b1; removing an edge of the square gains most
+        Map<String, Map<String, Long>> initialGraph = new LinkedHashMap<>();
+        initialGraph.put("a1", Map.of("a2", 1L, "b1", 9L));
+        initialGraph.put("a2", Map.of("a3", 2L));
+        initialGraph.put("a3", Map.of("a1", 3L));
+        initialGraph.put("b1", Map.of("b2", 5L));
+        initialGraph.put("b2", Map.of("b3", 6L));
+        initialGraph.put("b3", Map.of("b4", 7L));
+        initialGraph.put("b4", Map.of("b1", 8L));
+        G<String> g = G.create(initialGraph);
+        EdgeIterator<String> edgeIterator = gg -> gg.edgeIterator(Long::compareTo, null);
+        Cycle<String> cycle = Linearize.linearize(g).remainingCycles().cycles().iterator().next();
+        assertEquals(7, cycle.size());
+
+        // only the edges of the square reach the best quality, 3; two of them have no vertices in common
+        BreakCycles.Action<String> exact = new GreedyEdgeRemoval<>(String::valueOf, edgeIterator, null, 3, 0.0)
+                .compute(g, cycle);
+        assertEquals("EdgeRemoval[edges={b1={b2=5}, b3={b4=7}}]", exact.info().toString());
+        assertEquals(3, Linearize.qualityBasedOnTotalCluster(exact.apply()));
+
+        // within 50% of the best quality, an edge of the triangle (quality 4) is chosen as well
+        BreakCycles.Action<String> tolerant = new GreedyEdgeRemoval<>(String::valueOf, edgeIterator, null, 3, 0.5)
+                .compute(g, cycle);
+        assertEquals("EdgeRemoval[edges={b1={b2=5}, b3={b4=7}, a1={a2=1}}]", tolerant.info().toString());
+        assertEquals(0, Linearize.qualityBasedOnTotalCluster(tolerant.apply()));
+    }
+}
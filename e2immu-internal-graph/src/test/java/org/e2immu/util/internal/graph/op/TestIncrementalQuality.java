@@ -0,0 +1,109 @@
+package org.e2immu.util.internal.graph.op;
+
+import org.e2immu.util.internal.graph.G;
+import org.e2immu.util.internal.graph.V;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestIncrementalQuality {
+
+    @Test
+    public void test() {
+        // two cycles v1-v2-v3 and v4-v5, connected by v3->v4; v6 is on the path v5->v6->v1
+        Map<String, Map<String, Long>> initialGraph = new LinkedHashMap<>();
+        initialGraph.put("v1", Map.of("v2", 1L));
+        initialGraph.put("v2", Map.of("v3", 2L));
+        initialGraph.put("v3", Map.of("v1", 3L, "v4", 4L));
+        initialGraph.put("v4", Map.of("v5", 5L));
+        initialGraph.put("v5", Map.of("v4", 6L, "v6", 7L));
+        initialGraph.put("v6", Map.of("v1", 8L));
+        G<String> g = G.create(initialGraph);
+        V<String> v1 = g.vertex("v1");
+        V<String> v2 = g.vertex("v2");
+        V<String> v3 = g.vertex("v3");
+        V<String> v4 = g.vertex("v4");
+        V<String> v5 = g.vertex("v5");
+        V<String> v6 = g.vertex("v6");
+        IncrementalQuality<String> incrementalQuality = new IncrementalQuality<>(g);
+        assertEquals(6, incrementalQuality.quality(Map.of(), 7));
+
+        for (Map<V<String>, Map<V<String>, Long>> edgesToRemove : List.of(
+                Map.of(v1, Map.of(v2, 1L)),
+                Map.of(v3, Map.of(v4, 4L)),
+                Map.of(v3, Map.of(v1, 3L, v4, 4L)),
+                Map.of(v5, Map.of(v4, 6L)),
+                Map.of(v6, Map.of(v1, 8L)),
+                Map.of(v5, Map.of(v6, 7L), v2, Map.of(v3, 2L)))) {
+            int expected = Linearize.qualityBasedOnTotalCluster(g.withFewerEdgesMap(edgesToRemove));
+            assertEquals(expected, incrementalQuality.quality(edgesToRemove, 7), "Removing " + edgesToRemove);
+            assertTrue(incrementalQuality.quality(edgesToRemove, expected) >= expected);
+        }
+        // all vertices form one strongly connected component; without v3->v4 and v5->v6, v6 is no longer on a path
+        // between two cycles
+        assertEquals(5, incrementalQuality.quality(Map.of(v3, Map.of(v4, 4L), v5, Map.of(v6, 7L)), 7));
+    }
+
+    @Test
+    public void testDense() {
+        // 200 vertices, 20 random edges each, on top of a ring; then a component with only a ring
+        Random random = new Random(7);
+        Map<Integer, Map<Integer, Long>> initialGraph = new LinkedHashMap<>();
+        for (int i = 0; i < 200; i++) {
+            Map<Integer, Long> edges = new LinkedHashMap<>();
+            edges.put((i + 1) % 200, 1L);
+            for (int k = 0; k < 20; k++) edges.put(random.nextInt(200), 1L);
+            initialGraph.put(i, edges);
+        }
+        for (int i = 200; i < 300; i++) {
+            initialGraph.put(i, Map.of(i == 299 ? 200 : i + 1, 1L));
+        }
+        G<Integer> g = G.createCompact(initialGraph);
+        IncrementalQuality<Integer> incrementalQuality = new IncrementalQuality<>(g);
+        assertEquals(1, incrementalQuality.denseComponentCount());
+        assertEquals(300, incrementalQuality.quality(Map.of(), 301));
+
+        for (int round = 0; round < 50; round++) {
+            Map<V<Integer>, Map<V<Integer>, Long>> edgesToRemove = new HashMap<>();
+            // remove all edges of some vertices, so that the component may fall apart
+            for (int k = 0; k < 1 + round / 10; k++) {
+                int from = random.nextInt(300);
+                V<Integer> v = g.vertex(from);
+                edgesToRemove.put(v, g.edges(v));
+            }
+            int expected = Linearize.qualityBasedOnTotalCluster(g.withFewerEdgesMap(edgesToRemove));
+            assertEquals(expected, incrementalQuality.quality(edgesToRemove, 301), "Removing " + edgesToRemove);
+        }
+    }
+
+    @Test
+    public void testBoundedQuality() {
+        Map<String, Map<String, Long>> initialGraph = Map.of(
+                "v1", Map.of("v2", 1L),
+                "v2", Map.of("v3", 3L),
+                "v3", Map.of("v4", 6L, "v1", 2L),
+                "v4", Map.of("v5", 4L),
+                "v5", Map.of("v1", 5L, "v3", 5L),
+                "v6", Map.of("v1", 1L),
+                "v7", Map.of("v7", 1L));
+        G<String> g = G.create(initialGraph);
+        assertEquals(5, Linearize.linearize(g, Linearize.LinearizationMode.ONLY_REVERSE_GRAPH).quality());
+        assertEquals(5, Linearize.qualityBasedOnTotalCluster(g));
+        assertEquals(5, Linearize.quality(g, 6));
+        assertTrue(Linearize.quality(g, 5) >= 5);
+        assertTrue(Linearize.quality(g, 2) >= 2);
+
+        G<String> g1 = g.withFewerEdges(Map.of(g.vertex("v3"), Set.of(g.vertex("v4"))));
+        assertEquals(3, Linearize.quality(g1, 5));
+        G<String> g2 = g1.withFewerEdges(Map.of(g.vertex("v1"), Set.of(g.vertex("v2"))));
+        assertEquals(0, Linearize.quality(g2, 3));
+    }
+}
@@ -0,0 +1,98 @@
+package org.e2immu.util.internal.graph.op;
+
+import org.e2immu.util.internal.graph.G;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestKahnLevels {
+
+    private static <T> List<int[]> levels(G<T> g, boolean parallel, int parallelThreshold) {
+        List<int[]> levels = new ArrayList<>();
+        new KahnLevels(g.csr(), parallel, parallelThreshold).forEachRemaining(levels::add);
+        return levels;
+    }
+
+    private static void assertSameLevels(List<int[]> expected, List<int[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int l = 0; l < expected.size(); l++) {
+            assertEquals(Arrays.toString(expected.get(l)), Arrays.toString(actual.get(l)), "level " + l);
+        }
+    }
+
+    @Test
+    public void testParallel() {
+        // a wide DAG with a few cycles on top
+        Random random = new Random(42);
+        int n = 20_000;
+        Map<Integer, Map<Integer, Long>> initialGraph = new LinkedHashMap<>();
+        for (int i = 0; i < n; i++) {
+            Map<Integer, Long> edges = new LinkedHashMap<>();
+            for (int k = 0; k < 3 && i > 0; k++) {
+                edges.put(random.nextInt(i), 1L);
+            }
+            initialGraph.put(i, edges);
+        }
+        for (int i = 1000; i < n; i += 5000) {
+            initialGraph.get(i).put(i + 1, 1L);
+            initialGraph.get(i + 1).put(i, 1L);
+        }
+        G<Integer> g = G.createCompact(initialGraph);
+        Linearize.Result<Integer> r = Linearize.linearize(g, Linearize.LinearizationMode.ALL, false);
+        Linearize.Result<Integer> p = Linearize.linearize(g, Linearize.LinearizationMode.ALL, true);
+        assertTrue(r.linearized().size() > 10);
+        assertTrue(r.quality() > 0);
+        assertEquals(r.linearized().list().toString(), p.linearized().list().toString());
+        assertEquals(r.toString(), p.toString());
+        // every level in parallel, however small
+        assertSameLevels(levels(g, false, KahnLevels.PARALLEL_THRESHOLD), levels(g, true, 1));
+    }
+
+    @Test
+    public void testWideLevels() {
+        // four layers of 3000, 2000, 1500, 1200 vertices, each vertex with edges into the layer below;
+        // the vertices are added in random order, so that the sort of each level matters
+        Random random = new Random(7);
+        int[] layerSize = {3000, 2000, 1500, 1200};
+        List<int[]> layers = new ArrayList<>();
+        List<Integer> order = new ArrayList<>();
+        int n = 0;
+        for (int size : layerSize) {
+            int[] layer = new int[size];
+            for (int k = 0; k < size; k++) {
+                layer[k] = n;
+                order.add(n++);
+            }
+            layers.add(layer);
+        }
+        Collections.shuffle(order, random);
+        Map<Integer, Map<Integer, Long>> edges = new LinkedHashMap<>();
+        for (int i : order) edges.put(i, new LinkedHashMap<>());
+        for (int l = 1; l < layers.size(); l++) {
+            int[] below = layers.get(l - 1);
+            for (int i : layers.get(l)) {
+                for (int k = 0; k < 3; k++) {
+                    edges.get(i).put(below[random.nextInt(below.length)], 1L);
+                }
+            }
+        }
+        G<Integer> g = G.createCompact(edges);
+        List<int[]> sequential = levels(g, false, KahnLevels.PARALLEL_THRESHOLD);
+        assertEquals(layerSize.length, sequential.size());
+        for (int l = 0; l < layerSize.length; l++) {
+            // large enough for the parallel code path
+            assertEquals(layerSize[l], sequential.get(l).length);
+            assertTrue(sequential.get(l).length >= KahnLevels.PARALLEL_THRESHOLD);
+        }
+        assertSameLevels(sequential, levels(g, true, KahnLevels.PARALLEL_THRESHOLD));
+    }
+}
@@ -0,0 +1,128 @@
+package org.e2immu.util.internal.graph.op;
+
+import org.e2immu.util.internal.graph.G;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestLinearizeParts {
+
+    @Test
+    public void testParts() throws InterruptedException {
+        Map<String, Map<String, Long>> initialGraph = new LinkedHashMap<>();
+        initialGraph.put("v1", Map.of("v2", 1L));
+        initialGraph.put("v2", Map.of("v3", 1L));
+        initialGraph.put("v3", Map.of("v2", 1L, "v4", 1L));
+        initialGraph.put("v4", Map.of());
+        initialGraph.put("v5", Map.of("v4", 1L));
+        initialGraph.put("v6", Map.of("v1", 1L));
+        initialGraph.put("v7", Map.of("v8", 1L));
+        initialGraph.put("v8", Map.of("v7", 1L));
+        G<String> g = G.create(initialGraph);
+        Linearize.Result<String> r = Linearize.linearize(g);
+        assertEquals("L=[v4]; [v5] P=[v1]; [v6] R=[v2, v3]; [v7, v8]", r.toString());
+
+        List<Linearize.Part<String>> parts = new ArrayList<>();
+        Linearize.parts(g, Linearize.LinearizationMode.ALL, false).forEachRemaining(parts::add);
+        assertEquals(6, parts.size());
+        assertEquals("Part[type=LINEAR, index=0, vertices=[v4]]", parts.get(0).toString());
+        assertEquals("Part[type=ATTACHED, index=1, vertices=[v6]]", parts.get(3).toString());
+        assertEquals("Part[type=CYCLE, index=1, vertices=[v7, v8]]", parts.get(5).toString());
+
+        List<Linearize.Part<String>> published = new ArrayList<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Linearize.publisher(g, Linearize.LinearizationMode.ALL, false, executor).subscribe(new Flow.Subscriber<>() {
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscription.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(Linearize.Part<String> item) {
+                    published.add(item);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    latch.countDown();
+                }
+
+                @Override
+                public void onComplete() {
+                    latch.countDown();
+                }
+            });
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(parts, published);
+    }
+
+    @Test
+    public void testPublisherOnSingleThread() throws InterruptedException {
+        // a chain of 1000 vertices has 1000 levels, more than fit in the default buffer of a Flow publisher
+        int n = 1000;
+        Map<Integer, Map<Integer, Long>> initialGraph = new LinkedHashMap<>();
+        for (int i = 0; i < n; i++) {
+            initialGraph.put(i, i == 0 ? Map.of() : Map.of(i - 1, 1L));
+        }
+        G<Integer> g = G.create(initialGraph);
+        List<Linearize.Part<Integer>> parts = new ArrayList<>();
+        Linearize.parts(g, Linearize.LinearizationMode.ALL, false).forEachRemaining(parts::add);
+        assertEquals(n, parts.size());
+
+        for (long batch : new long[]{Long.MAX_VALUE, 10}) {
+            List<Linearize.Part<Integer>> published = new ArrayList<>();
+            CountDownLatch latch = new CountDownLatch(1);
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                Linearize.publisher(g, Linearize.LinearizationMode.ALL, false, executor).subscribe(new Flow.Subscriber<>() {
+                    private Flow.Subscription subscription;
+                    private long requested;
+
+                    @Override
+                    public void onSubscribe(Flow.Subscription subscription) {
+                        this.subscription = subscription;
+                        requested = batch;
+                        subscription.request(batch);
+                    }
+
+                    @Override
+                    public void onNext(Linearize.Part<Integer> item) {
+                        // never more than requested; a failure here reaches onError, and published stays short
+                        assertTrue(published.size() < requested);
+                        published.add(item);
+                        if (published.size() == requested) {
+                            requested += batch;
+                            subscription.request(batch);
+                        }
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        latch.countDown();
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        latch.countDown();
+                    }
+                });
+                assertTrue(latch.await(10, TimeUnit.SECONDS));
+            } finally {
+                executor.shutdown();
+            }
+            assertEquals(parts, published);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.e2immu.util.internal.graph.op;
+
+import org.e2immu.util.internal.graph.EdgeIterator;
+import org.e2immu.util.internal.graph.G;
+import org.e2immu.util.internal.graph.V;
+import org.junit.jupiter.api.Test;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestParallelGreedyEdgeRemoval {
+
+    private static G<Integer> graph() {
+        Random random = new Random(5);
+        Map<Integer, Map<Integer, Long>> initialGraph = new LinkedHashMap<>();
+        for (int i = 0; i < 60; i++) {
+            Map<Integer, Long> edges = new LinkedHashMap<>();
+            edges.put((i + 1) % 60, 1L + random.nextInt(3));
+            edges.put(random.nextInt(60), 1L + random.nextInt(3));
+            initialGraph.put(i, edges);
+        }
+        return G.create(initialGraph);
+    }
+
+    @Test
+    public void test() {
+        G<Integer> g = graph();
+        EdgeIterator<Integer> edgeIterator = gg -> gg.edgeIterator(Long::compareTo, null);
+        BreakCycles.Linearization<Integer> sequential = new BreakCycles<>(new GreedyEdgeRemoval<>(
+                String::valueOf, edgeIterator, null)).go(g);
+        BreakCycles.Linearization<Integer> parallel = new BreakCycles<>(new ParallelGreedyEdgeRemoval<>(
+                String::valueOf, edgeIterator, null)).go(g);
+        // ties are broken by the position in the edge iterator, as in the sequential version
+        assertEquals(sequential.actionLog(), parallel.actionLog());
+        assertEquals(sequential.toString(), parallel.toString());
+
+        // stop at the first candidate that reduces the cycle by at least 3, rather than at the best one
+        Cycle<Integer> cycle = Linearize.linearize(g).remainingCycles().cycles().iterator().next();
+        int goodEnough = cycle.size() - 3;
+        G<Integer> sub = g.subGraph(cycle.vertices());
+        Iterator<Map<V<Integer>, Map<V<Integer>, Long>>> iterator = edgeIterator.iterator(sub);
+        Map<V<Integer>, Map<V<Integer>, Long>> first;
+        do {
+            first = iterator.next();
+        } while (Linearize.qualityBasedOnTotalCluster(sub.withFewerEdgesMap(first)) > goodEnough);
+        BreakCycles.Action<Integer> action = new ParallelGreedyEdgeRemoval<>(String::valueOf, edgeIterator, null,
+                goodEnough).compute(g, cycle);
+        assertEquals(new BreakCycles.EdgeRemoval<>(first), action.info());
+    }
+
+    @Test
+    public void testExecutor() {
+        G<Integer> g = graph();
+        EdgeIterator<Integer> edgeIterator = gg -> gg.edgeIterator(Long::compareTo, null);
+        BreakCycles.Linearization<Integer> sequential = new BreakCycles<>(new GreedyEdgeRemoval<>(
+                String::valueOf, edgeIterator, null)).go(g);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            BreakCycles.Linearization<Integer> dedicated = new BreakCycles<>(new ParallelGreedyEdgeRemoval<>(
+                    String::valueOf, edgeIterator, null, 0, executor, 4)).go(g);
+            assertEquals(sequential.actionLog(), dedicated.actionLog());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.e2immu.util.internal.graph.op;
+
+import org.e2immu.util.internal.graph.G;
+import org.e2immu.util.internal.graph.V;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestReduction {
+
+    @Test
+    public void test() {
+        // ring v1..v6 with a chord v1->v4, a self-loop on v3, a source v7 and a sink v8
+        Map<String, Map<String, Long>> initialGraph = new LinkedHashMap<>();
+        initialGraph.put("v1", Map.of("v2", 1L, "v4", 7L));
+        initialGraph.put("v2", Map.of("v3", 2L));
+        initialGraph.put("v3", Map.of("v3", 3L, "v4", 4L));
+        initialGraph.put("v4", Map.of("v5", 5L));
+        initialGraph.put("v5", Map.of("v6", 6L));
+        initialGraph.put("v6", Map.of("v1", 8L, "v8", 9L));
+        initialGraph.put("v7", Map.of("v1", 10L));
+        initialGraph.put("v8", Map.of());
+        G<String> g = G.create(initialGraph);
+        Reduction<String> reduction = Reduction.of(g);
+        assertEquals("v1->1->v3, v1->7->v4, v3->4->v4, v4->5->v1", reduction.kernel().toString());
+
+        // v4->v1 stands for the chain v4->v5->v6->v1, of which v4->v5 has the lowest weight
+        V<String> v1 = g.vertex("v1");
+        V<String> v3 = g.vertex("v3");
+        V<String> v4 = g.vertex("v4");
+        Map<V<String>, Set<V<String>>> kernelEdges = new LinkedHashMap<>();
+        kernelEdges.put(v4, Set.of(v1));
+        kernelEdges.put(v1, Set.of(v3));
+        assertEquals("{v4={v5=5}, v1={v2=1}}", reduction.expand(kernelEdges).toString());
+    }
+
+    @Test
+    public void testBreakCycles() {
+        Map<String, Map<String, Long>> initialGraph = Map.of(
+                "v1", Map.of("v2", 1L, "v3", 2L),
+                "v2", Map.of("v3", 3L),
+                "v3", Map.of("v4", 6L),
+                "v4", Map.of("v5", 4L),
+                "v5", Map.of("v1", 5L, "v3", 5L));
+        G<String> g = G.create(initialGraph);
+        BreakCycles<String> bc = new BreakCycles<>(Reduction.reducing(new GreedyEdgeRemoval<>()));
+        BreakCycles.Linearization<String> linearization = bc.go(g);
+        // v4 is contracted: the kernel edge v3->v5 stands for v4->v5, the lighter one of v3->v4->v5
+        assertEquals("[v4]; [v3]; [v2]; [v1]; [v5]", linearization.toString());
+        assertEquals(1, linearization.actionLog().size());
+        assertEquals("EdgeRemoval[edges={v4={v5=4}}]", linearization.actionLog().get(0).toString());
+    }
+}
@@ -0,0 +1,58 @@
+package org.e2immu.util.internal.graph.op;
+
+import org.e2immu.util.internal.graph.G;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestStronglyConnectedComponents {
+
+    @Test
+    public void test() {
+        Map<String, Map<String, Long>> initialGraph = new LinkedHashMap<>();
+        initialGraph.put("v1", Map.of("v3", 1L));
+        initialGraph.put("v2", Map.of("v3", 2L));
+        initialGraph.put("v3", Map.of("v4", 3L));
+        initialGraph.put("v4", Map.of("v7", 4L));
+        initialGraph.put("v5", Map.of("v4", 5L));
+        initialGraph.put("v6", Map.of("v5", 6L));
+        initialGraph.put("v7", Map.of("v6", 7L, "v8", 8L));
+        initialGraph.put("v8", Map.of());
+        initialGraph.put("v9", Map.of("v10", 9L));
+        initialGraph.put("v10", Map.of("v9", 10L));
+        initialGraph.put("v11", Map.of("v11", 11L));
+        G<String> g = G.create(initialGraph);
+        StronglyConnectedComponents scc = StronglyConnectedComponents.of(g);
+        assertEquals(7, scc.count());
+        assertEquals("[v10, v9]; [v11]; [v4, v5, v6, v7]", scc.cycles(g).toString());
+
+        // every edge goes from a higher to a lower (or the same) component
+        g.forEachIntEdge((from, to, weight) -> assertTrue(scc.component(from) >= scc.component(to)));
+        assertEquals(0, scc.component(g.indexOf(g.vertex("v8"))));
+    }
+
+    @Test
+    public void testLongChain() {
+        int n = 200_000;
+        Map<Integer, Map<Integer, Long>> initialGraph = new LinkedHashMap<>();
+        for (int i = 0; i < n; i++) {
+            initialGraph.put(i, Map.of((i + 1) % n, 1L));
+        }
+        G<Integer> g = G.createCompact(initialGraph);
+        StronglyConnectedComponents scc = StronglyConnectedComponents.of(g);
+        assertEquals(1, scc.count());
+        assertEquals(n, scc.cycles(g).maxCycleSize());
+
+        initialGraph.put(n - 1, Map.of());
+        G<Integer> chain = G.createCompact(initialGraph);
+        StronglyConnectedComponents scc2 = StronglyConnectedComponents.of(chain);
+        assertEquals(n, scc2.count());
+        assertTrue(scc2.cycles(chain).isEmpty());
+        assertEquals(0, scc2.component(n - 1));
+        assertEquals(n - 1, scc2.component(0));
+    }
+}